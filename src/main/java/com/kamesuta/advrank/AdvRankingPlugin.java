@@ -85,8 +85,11 @@ public final class AdvRankingPlugin extends JavaPlugin implements Listener {
         }
         getServer().getPluginManager().registerEvents(rankingManager, this);
 
-        // 定期的にSQLのPingを送信
-        getServer().getScheduler().runTaskTimerAsynchronously(this, () -> rankingManager.pingDatabase(), 0, 300 * 20);
+        // 定期的に待機中の接続の生存確認を行う
+        // 接続プールの設定はstorage.typeごとに分かれている
+        String poolSection = "sqlite".equalsIgnoreCase(getConfig().getString("storage.type")) ? "storage.sqlite" : "mysql.pool";
+        long validationInterval = getConfig().getLong(poolSection + ".validationIntervalSeconds", 30) * 20;
+        getServer().getScheduler().runTaskTimerAsynchronously(this, () -> rankingManager.pingDatabase(), validationInterval, validationInterval);
 
         // Viewer初期化
         viewer = new AdvancementViewer();
@@ -1,6 +1,7 @@
 package com.kamesuta.advrank.command;
 
 import com.kamesuta.advrank.importer.AdvancementImporter;
+import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 
 import java.util.Collections;
@@ -15,6 +16,10 @@ import static com.kamesuta.advrank.AdvRankingPlugin.app;
 public class AdvAdminCommandHandler extends BaseCommandHandler {
     private static final String PERMISSION = "advrank.admin";
     private static final String IMPORT_COMMAND = "import_json_to_db";
+    private static final String STATS_COMMAND = "stats";
+    private static final String REBUILD_COUNTERS_COMMAND = "rebuild_counters";
+    private static final String FULL_OPTION = "full";
+    private static final String USAGE = "使用法: /adv_admin <" + IMPORT_COMMAND + "|" + STATS_COMMAND + "|" + REBUILD_COUNTERS_COMMAND + ">";
 
     @Override
     public boolean handleCommand(CommandSender sender, String[] args) {
@@ -26,16 +31,18 @@ public class AdvAdminCommandHandler extends BaseCommandHandler {
 
         // サブコマンドの存在チェック
         if (args.length == 0) {
-            sendErrorMessage(sender, "使用法: /adv_admin " + IMPORT_COMMAND);
+            sendErrorMessage(sender, USAGE);
             return true;
         }
 
         // サブコマンドを実行
         return switch (args[0]) {
-            case IMPORT_COMMAND -> executeImportCommand(sender);
+            case IMPORT_COMMAND -> executeImportCommand(sender, args.length >= 2 && FULL_OPTION.equals(args[1]));
+            case STATS_COMMAND -> executeStatsCommand(sender);
+            case REBUILD_COUNTERS_COMMAND -> executeRebuildCountersCommand(sender);
             default -> {
                 sendErrorMessage(sender, "不明なサブコマンド: " + args[0]);
-                sendErrorMessage(sender, "使用法: /adv_admin " + IMPORT_COMMAND);
+                sendErrorMessage(sender, USAGE);
                 yield true;
             }
         };
@@ -43,12 +50,14 @@ public class AdvAdminCommandHandler extends BaseCommandHandler {
 
     /**
      * JSONインポートコマンドを実行する
+     *
+     * @param full 前回のインポートから変更されていないファイルも読み込む場合true
      */
-    private boolean executeImportCommand(CommandSender sender) {
+    private boolean executeImportCommand(CommandSender sender, boolean full) {
         try {
-            // インポーターを作成して実行
+            // インポーターを作成して実行（非同期で実行されるため、すぐに戻る）
             var importer = new AdvancementImporter(app.rankingManager);
-            importer.importFromJson(sender);
+            importer.importFromJson(sender, full);
         } catch (Exception e) {
             // エラーハンドリング
             logError("JSON インポート中にエラーが発生しました", e);
@@ -57,6 +66,38 @@ public class AdvAdminCommandHandler extends BaseCommandHandler {
         return true;
     }
 
+    /**
+     * 統計情報表示コマンドを実行する
+     */
+    private boolean executeStatsCommand(CommandSender sender) {
+        sender.sendMessage("§b=== 統計情報 ===");
+        sender.sendMessage(app.ranking.generateTimingReport());
+        sender.sendMessage(app.rankingManager.generatePoolReport());
+        sender.sendMessage(app.rankingManager.generateWriteQueueReport());
+        sender.sendMessage(app.rankingManager.generateRankingCacheReport());
+        return true;
+    }
+
+    /**
+     * カウンター再構築コマンドを実行する
+     * テーブル全体を数え直すため非同期で実行する
+     */
+    private boolean executeRebuildCountersCommand(CommandSender sender) {
+        sender.sendMessage("§aカウンターを再構築しています...");
+        Bukkit.getScheduler().runTaskAsynchronously(app, () -> {
+            try {
+                var result = app.rankingManager.rebuildCounters();
+                var message = "§aカウンターを再構築しました §f(プレイヤー: %d人, 実績: %d件, %dms)".formatted(
+                        result.playerCount(), result.advancementCount(), result.elapsedMillis());
+                Bukkit.getScheduler().runTask(app, () -> sender.sendMessage(message));
+            } catch (Exception e) {
+                logError("カウンターの再構築中にエラーが発生しました", e);
+                Bukkit.getScheduler().runTask(app, () -> sendErrorMessage(sender, "カウンターの再構築中にエラーが発生しました。ログを確認してください。"));
+            }
+        });
+        return true;
+    }
+
     @Override
     public List<String> handleTabComplete(CommandSender sender, String[] args) {
         // 権限チェック
@@ -66,7 +107,12 @@ public class AdvAdminCommandHandler extends BaseCommandHandler {
         
         // 1番目の引数：利用可能なサブコマンドを表示
         if (args.length == 1) {
-            return List.of(IMPORT_COMMAND);
+            return List.of(IMPORT_COMMAND, STATS_COMMAND, REBUILD_COUNTERS_COMMAND);
+        }
+
+        // 2番目の引数：インポートのオプションを表示
+        if (args.length == 2 && IMPORT_COMMAND.equals(args[0])) {
+            return List.of(FULL_OPTION);
         }
         
         return Collections.emptyList();
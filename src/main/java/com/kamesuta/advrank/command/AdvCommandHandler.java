@@ -1,6 +1,6 @@
 package com.kamesuta.advrank.command;
 
-import com.kamesuta.advrank.data.PlayerData;
+import com.kamesuta.advrank.data.ViewTarget;
 import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 import org.bukkit.craftbukkit.entity.CraftPlayer;
@@ -15,6 +15,7 @@ import static com.kamesuta.advrank.AdvRankingPlugin.app;
 /**
  * /adv コマンドハンドラー
  * 他のプレイヤーの進捗を表示する機能を処理する
+ * オンラインのプレイヤーが見つからない場合は、データベースに記録されたプレイヤー名から探す
  */
 public class AdvCommandHandler extends BaseCommandHandler {
 
@@ -34,13 +35,30 @@ public class AdvCommandHandler extends BaseCommandHandler {
 
         // ターゲットプレイヤーを検索
         var target = findTargetPlayer(sender, args[0]);
-        if (target == null) {
-            sendErrorMessage(sender, "プレイヤーが見つかりません");
+        if (target != null) {
+            // プレイヤーの進捗表示を開始
+            displayPlayerAdvancements((CraftPlayer) player, ViewTarget.of(target));
             return true;
         }
 
-        // プレイヤーの進捗表示を開始
-        displayPlayerAdvancements((CraftPlayer) player, target);
+        // オフラインのプレイヤーをデータベースから検索
+        var targetName = args[0];
+        Bukkit.getScheduler().runTaskAsynchronously(app, () -> {
+            try {
+                var stored = app.rankingManager.findPlayerByName(targetName);
+                Bukkit.getScheduler().runTask(app, () -> {
+                    if (!player.isOnline()) return;
+                    if (stored == null) {
+                        sendErrorMessage(sender, "プレイヤーが見つかりません");
+                        return;
+                    }
+                    displayPlayerAdvancements((CraftPlayer) player, new ViewTarget(stored.uuid(), stored.name()));
+                });
+            } catch (Exception e) {
+                logError("プレイヤーの検索中にエラーが発生しました", e);
+                Bukkit.getScheduler().runTask(app, () -> sendErrorMessage(sender, "プレイヤーの検索中にエラーが発生しました"));
+            }
+        });
         return true;
     }
 
@@ -58,17 +76,17 @@ public class AdvCommandHandler extends BaseCommandHandler {
     /**
      * ターゲットプレイヤーの進捗表示を設定する
      */
-    private void displayPlayerAdvancements(CraftPlayer player, CraftPlayer target) {
+    private void displayPlayerAdvancements(CraftPlayer player, ViewTarget target) {
         // プレイヤーにタイトルメッセージを表示
-        player.sendTitle("「L」キーで進捗画面を開く", target.getName() + " の進捗を表示中...", 10, 100000, 10);
+        player.sendTitle("「L」キーで進捗画面を開く", target.name() + " の進捗を表示中...", 10, 100000, 10);
         
         // プレイヤーデータを更新
         var playerData = app.playerDataManager.getPlayerData(player);
         playerData.targetQueue = target; // 表示対象を設定
         playerData.needUpdate = true;    // 更新フラグを立てる
         
-        // 進捗ビューワーを開く
-        app.viewer.seePlayerAdvancements(player, target);
+        // 進捗ビューワーを開く（オフラインの場合はデータベースから読み込んでから送信する）
+        app.viewer.refresh(player);
     }
 
     @Override
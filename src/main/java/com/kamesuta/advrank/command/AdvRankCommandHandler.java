@@ -1,8 +1,11 @@
 package com.kamesuta.advrank.command;
 
 import com.kamesuta.advrank.display.ChatUtils;
+import com.kamesuta.advrank.ranking.RankingService;
+import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
+import org.jetbrains.annotations.Nullable;
 
 import java.text.SimpleDateFormat;
 import java.util.Collections;
@@ -41,8 +44,17 @@ public class AdvRankCommandHandler extends BaseCommandHandler {
             return true;
         }
 
-        // ランキングを表示
-        displayRanking(sender, advancementId, page);
+        // ランキングを取得して表示
+        // 順位の振り直しを待つことがあるため、取得は非同期で行う
+        var playerUuid = sender instanceof Player player ? player.getUniqueId() : null;
+        Bukkit.getScheduler().runTaskAsynchronously(app, () -> {
+            var result = app.rankingManager.getRankingByAdvancementIdWithPagination(advancementId, page, PAGE_SIZE);
+            // 1ページ目では、ページ内にいない場合に表示する自分のランキングも取得する
+            var playerRanking = page == 1 && playerUuid != null
+                    ? app.rankingManager.getPlayerRankingByAdvancementId(advancementId, playerUuid)
+                    : null;
+            Bukkit.getScheduler().runTask(app, () -> displayRanking(sender, advancementId, page, result, playerRanking));
+        });
         return true;
     }
 
@@ -79,11 +91,11 @@ public class AdvRankCommandHandler extends BaseCommandHandler {
 
     /**
      * ランキングを表示する
+     *
+     * @param result ランキングデータ
+     * @param playerRanking 自分のランキング（1ページ目以外またはプレイヤー以外の場合はnull）
      */
-    private void displayRanking(CommandSender sender, int advancementId, int page) {
-        // ランキングデータを取得
-        var result = app.rankingManager.getRankingByAdvancementIdWithPagination(advancementId, page, PAGE_SIZE);
-
+    private void displayRanking(CommandSender sender, int advancementId, int page, RankingService.RankingResult result, @Nullable RankingService.RankingEntry playerRanking) {
         // データが存在しない場合
         if (result.totalCount() == 0) {
             sender.sendMessage("§7この実績を達成したプレイヤーはいません");
@@ -117,12 +129,9 @@ public class AdvRankCommandHandler extends BaseCommandHandler {
         }
 
         // 1ページ目で自分がページ内にいない場合、自分のランキングを表示
-        if (page == 1 && playerUuid != null) {
-            var playerRanking = app.rankingManager.getPlayerRankingByAdvancementId(advancementId, playerUuid);
-            if (playerRanking != null && playerRanking.rank() > PAGE_SIZE) {
-                var formattedTime = DATE_FORMAT.format(playerRanking.timestamp());
-                ChatUtils.displayRankingEntry(sender, playerRanking.rank(), playerRanking.playerName(), formattedTime, true);
-            }
+        if (playerRanking != null && playerRanking.rank() > PAGE_SIZE) {
+            var formattedTime = DATE_FORMAT.format(playerRanking.timestamp());
+            ChatUtils.displayRankingEntry(sender, playerRanking.rank(), playerRanking.playerName(), formattedTime, true);
         }
 
         // ページネーション UI
@@ -1,6 +1,5 @@
 package com.kamesuta.advrank.data;
 
-import org.bukkit.entity.Player;
 import org.jetbrains.annotations.Nullable;
 
 /**
@@ -12,9 +11,9 @@ public class PlayerData {
      */
     public boolean needUpdate = true;
     /**
-     * 次回進捗メニューを開いたときに進捗を見る対象のプレイヤー
+     * 次回進捗メニューを開いたときに進捗を見る対象のプレイヤー（オフラインの場合もある）
      */
-    public @Nullable Player targetQueue;
+    public @Nullable ViewTarget targetQueue;
     /**
      * IDを表示
      */
@@ -48,40 +48,37 @@ public record RankingProgressData(
     }
 
     /**
-     * ランキングを追加します
+     * ランキングの1行を作成します
      *
-     * @param description 出力先
-     * @param ranking     ランキング
+     * @param progress 行のプレイヤーの進捗
+     * @param own      見ているプレイヤー自身の行か（緑色で強調する）
+     * @return 「n位:名前(日時)」の行
      */
-    public void appendRanking(MutableComponent description, List<PlayerProgress> ranking) {
-        for (PlayerProgress progress : ranking) {
-            // プレイヤー名
-            MutableComponent name = Component.literal(Optional.ofNullable(progress.player.getName()).orElse("不明"));
-            if (this.progress != null && progress.player.equals(this.progress.player)) {
-                // 自分の進捗
-                name.withStyle(ChatFormatting.GREEN);
-            }
-
-            // ランク
-            MutableComponent rank = Component.literal(String.format("%d位", progress.rank));
-            switch (progress.rank) {
-                case 1:
-                    rank.withStyle(ChatFormatting.GOLD);
-                    break;
-                case 2:
-                    rank.withStyle(ChatFormatting.AQUA);
-                    break;
-                case 3:
-                    rank.withStyle(ChatFormatting.RED);
-                    break;
-            }
+    public static MutableComponent rankingLine(PlayerProgress progress, boolean own) {
+        // プレイヤー名
+        MutableComponent name = Component.literal(Optional.ofNullable(progress.player.getName()).orElse("不明"));
+        if (own) {
+            // 自分の進捗
+            name.withStyle(ChatFormatting.GREEN);
+        }
 
-            // 進捗を取得
-            String time = TIME_FORMATTER.format(progress.timestamp);
-            // ランキングを追加
-            description.append("\n")
-                    .append(Component.empty().append(rank).append(":").append(name).append(String.format("(%s)", time)).withStyle(ChatFormatting.GRAY));
+        // ランク
+        MutableComponent rank = Component.literal(String.format("%d位", progress.rank));
+        switch (progress.rank) {
+            case 1:
+                rank.withStyle(ChatFormatting.GOLD);
+                break;
+            case 2:
+                rank.withStyle(ChatFormatting.AQUA);
+                break;
+            case 3:
+                rank.withStyle(ChatFormatting.RED);
+                break;
         }
+
+        // 進捗を取得
+        String time = TIME_FORMATTER.format(progress.timestamp);
+        return Component.empty().append(rank).append(":").append(name).append(String.format("(%s)", time)).withStyle(ChatFormatting.GRAY);
     }
 
     /**
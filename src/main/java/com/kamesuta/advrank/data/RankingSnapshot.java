@@ -0,0 +1,33 @@
+package com.kamesuta.advrank.data;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * 見るプレイヤーによらない実績のランキングデータ
+ * 同じ実績を見る全てのプレイヤーで共有する
+ *
+ * @param advancementId 実績ID（誰も達成していない場合は-1）
+ * @param total         トータルのプレイヤー数
+ * @param done          達成したプレイヤーの数
+ * @param top           上位のプレイヤーの進捗
+ * @param bottom        下位のプレイヤーの進捗
+ */
+public record RankingSnapshot(
+        int advancementId,
+        int total,
+        int done,
+        List<RankingProgressData.PlayerProgress> top,
+        List<RankingProgressData.PlayerProgress> bottom
+) {
+    /**
+     * 見るプレイヤーの進捗と組み合わせて進捗データを作成する
+     *
+     * @param progress 見るプレイヤーの進捗（未達成の場合はnull）
+     * @return ランキングの進捗データ
+     */
+    public RankingProgressData withProgress(@Nullable RankingProgressData.PlayerProgress progress) {
+        return new RankingProgressData(total, done, progress, top, bottom);
+    }
+}
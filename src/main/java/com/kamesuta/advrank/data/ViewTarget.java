@@ -0,0 +1,35 @@
+package com.kamesuta.advrank.data;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+
+/**
+ * 進捗を見る対象のプレイヤー
+ * オフラインのプレイヤーも対象にできるよう、UUIDと名前で保持する
+ *
+ * @param uuid プレイヤーのUUID
+ * @param name プレイヤー名
+ */
+public record ViewTarget(UUID uuid, String name) {
+    /**
+     * オンラインのプレイヤーを対象にする
+     *
+     * @param player プレイヤー
+     * @return 対象
+     */
+    public static ViewTarget of(Player player) {
+        return new ViewTarget(player.getUniqueId(), player.getName());
+    }
+
+    /**
+     * 対象がオンラインであればそのプレイヤーを取得する
+     *
+     * @return オンラインのプレイヤー（オフラインの場合はnull）
+     */
+    public @Nullable Player getOnlinePlayer() {
+        return Bukkit.getPlayer(uuid);
+    }
+}
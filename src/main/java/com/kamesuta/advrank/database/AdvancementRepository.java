@@ -1,57 +1,118 @@
 package com.kamesuta.advrank.database;
 
 import java.sql.*;
-import java.util.logging.Level;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 /**
  * 実績関連のデータベース操作を担当するリポジトリクラス
  * 実績情報とプレイヤーの実績達成記録のCRUD操作を提供する
+ * advancementテーブルは起動時に全件メモリに読み込み、実績キーとIDの変換はデータベースにアクセスせずに行う
  */
 public class AdvancementRepository {
     private static final Logger logger = Logger.getLogger(AdvancementRepository.class.getName());
     
     private final DatabaseManager databaseManager;
+    private final CounterRepository counterRepository;
+    private final CompletionRankRepairer rankRepairer;
+
+    /**
+     * 実績ID → 実績キー（添字が実績ID、存在しないIDはnull）
+     */
+    private volatile String[] idToKey = new String[0];
+    /**
+     * 実績キー → 実績ID
+     */
+    private final Map<String, Integer> keyToId = new ConcurrentHashMap<>();
     
-    public AdvancementRepository(DatabaseManager databaseManager) {
+    public AdvancementRepository(DatabaseManager databaseManager, CounterRepository counterRepository, CompletionRankRepairer rankRepairer) throws SQLException {
         this.databaseManager = databaseManager;
+        this.counterRepository = counterRepository;
+        this.rankRepairer = rankRepairer;
+        loadAll();
+    }
+
+    /**
+     * advancementテーブルを全件読み込む
+     */
+    private void loadAll() throws SQLException {
+        try (var conn = databaseManager.getConnection(); var pstmt = conn.prepareStatement(
+                "SELECT id, advancement_key FROM advancement;"
+        )) {
+            var rs = pstmt.executeQuery();
+            while (rs.next()) {
+                register(rs.getInt("id"), rs.getString("advancement_key"));
+            }
+        }
+    }
+
+    /**
+     * 実績キーとIDの対応を登録する
+     */
+    private synchronized void register(int advancementId, String advancementKey) {
+        var keys = idToKey;
+        if (advancementId >= keys.length) {
+            // 配列を拡張する
+            keys = Arrays.copyOf(keys, Math.max(advancementId + 1, keys.length * 2));
+        }
+        keys[advancementId] = advancementKey;
+        idToKey = keys;
+        keyToId.put(advancementKey, advancementId);
     }
     
     /**
      * 実績IDを取得または新規作成する
+     * 登録済みの実績はデータベースにアクセスせずに返す
      * 
      * @param advancementKey 実績キー
      * @return 実績ID
      */
     public int getOrCreateAdvancementId(String advancementKey) throws SQLException {
-        // まず既存の実績を検索
-        var selectSql = "SELECT id FROM advancement WHERE advancement_key = ?";
-        try (var selectStmt = databaseManager.getConnection().prepareStatement(selectSql)) {
-            selectStmt.setString(1, advancementKey);
-            try (var rs = selectStmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("id");
-                }
+        var advancementId = keyToId.get(advancementKey);
+        if (advancementId != null) {
+            return advancementId;
+        }
+
+        // 新規実績を作成（同じキーを二重に作成しないよう排他する）
+        synchronized (this) {
+            advancementId = keyToId.get(advancementKey);
+            if (advancementId != null) {
+                return advancementId;
             }
+            var createdId = createAdvancement(advancementKey);
+            register(createdId, advancementKey);
+            return createdId;
         }
-        
-        // 新規実績を作成
-        return createAdvancement(advancementKey);
     }
     
     /**
      * 新しい実績レコードを作成する
+     * 他のサーバーが同時に作成した場合に備え、既存のレコードがあればそのIDを返す
      */
     private int createAdvancement(String advancementKey) throws SQLException {
-        var insertSql = "INSERT INTO advancement (advancement_key) VALUES (?)";
-        try (var insertStmt = databaseManager.getConnection().prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
-            insertStmt.setString(1, advancementKey);
-            insertStmt.executeUpdate();
-            
-            // 生成されたIDを取得
-            try (var rs = insertStmt.getGeneratedKeys()) {
-                if (rs.next()) {
-                    return rs.getInt(1);
+        try (var conn = databaseManager.getConnection()) {
+            try (var insertStmt = conn.prepareStatement(databaseManager.getDialect().insertIgnoreInto("advancement") + " (advancement_key) VALUES (?)")) {
+                insertStmt.setString(1, advancementKey);
+                insertStmt.executeUpdate();
+            }
+
+            // IDを取得
+            try (var selectStmt = conn.prepareStatement("SELECT id FROM advancement WHERE advancement_key = ?")) {
+                selectStmt.setString(1, advancementKey);
+                try (var rs = selectStmt.executeQuery()) {
+                    if (rs.next()) {
+                        return rs.getInt("id");
+                    }
                 }
             }
         }
@@ -60,67 +121,246 @@ public class AdvancementRepository {
     }
     
     /**
-     * プレイヤーの実績達成を記録する
-     * 
-     * @param playerId プレイヤーID
-     * @param advancementId 実績ID
-     * @param timestamp 達成日時（nullの場合は現在時刻）
-     */
-    public void recordPlayerAdvancement(int playerId, int advancementId, Timestamp timestamp) throws SQLException {
-        // タイムスタンプに応じてSQL文を選択
-        var sql = timestamp == null 
-            ? "INSERT IGNORE INTO player_advancement (player_id, advancement_id, timestamp) VALUES (?, ?, NOW());"
-            : "INSERT IGNORE INTO player_advancement (player_id, advancement_id, timestamp) VALUES (?, ?, ?);";
-            
-        try (var pstmt = databaseManager.getConnection().prepareStatement(sql)) {
-            pstmt.setInt(1, playerId);
-            pstmt.setInt(2, advancementId);
-            if (timestamp != null) {
-                pstmt.setTimestamp(3, timestamp);
+     * 複数のプレイヤーの実績達成をまとめて記録する
+     * 1つの複数行INSERT文で書き込むため、件数に関わらずデータベースとの往復は少ない回数で済む
+     * 達成者数のカウンターも同じトランザクションで加算し、達成順位も記録時に決めて保存する
+     *
+     * @param rows 記録する実績達成
+     * @return 新しく記録された実績達成（記録済みのものは含まない）
+     */
+    public List<PlayerAdvancementRow> recordPlayerAdvancements(List<PlayerAdvancementRow> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+
+        var inserted = new ArrayList<PlayerAdvancementRow>(rows.size());
+        var deltas = new HashMap<Integer, Integer>();
+        var dirty = new TreeSet<Integer>();
+        // カウンターの再構築と重ならないよう、メモリに反映するまでロックする
+        var updateLock = counterRepository.updateLock();
+        updateLock.lock();
+        try (var conn = databaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+
+            // 同じ実績への書き込みと順位の振り直しを直列にするため、最初にカウンターをロックする
+            var advancementIds = new TreeSet<Integer>();
+            rows.forEach(row -> advancementIds.add(row.advancementId()));
+            var doneCounts = counterRepository.lockCompletedCounts(conn, advancementIds);
+
+            // 記録済みの組み合わせをロックして取得し、新しい組み合わせだけを追加する
+            var existing = findExistingPairs(conn, rows);
+            for (var row : rows) {
+                if (existing.add(toPair(row.playerId(), row.advancementId()))) {
+                    inserted.add(row);
+                    deltas.merge(row.advancementId(), 1, Integer::sum);
+                }
+            }
+
+            if (!inserted.isEmpty()) {
+                var ranked = assignRanks(inserted, doneCounts, findLatestCompletions(conn, inserted), dirty);
+                var sql = databaseManager.getDialect().insertIgnoreInto("player_advancement") + " (player_id, advancement_id, timestamp, completion_rank) VALUES "
+                        + String.join(", ", Collections.nCopies(ranked.size(), "(?, ?, ?, ?)")) + ";";
+                try (var pstmt = conn.prepareStatement(sql)) {
+                    var index = 1;
+                    for (var row : ranked) {
+                        pstmt.setInt(index++, row.row().playerId());
+                        pstmt.setInt(index++, row.row().advancementId());
+                        pstmt.setTimestamp(index++, row.row().timestamp());
+                        if (row.rank() != null) {
+                            pstmt.setInt(index++, row.rank());
+                        } else {
+                            pstmt.setNull(index++, Types.INTEGER);
+                        }
+                    }
+                    pstmt.executeUpdate();
+                }
+                counterRepository.addCompletions(conn, deltas);
+                rankRepairer.markDirty(conn, dirty);
+            }
+            // 失敗した場合は接続の返却時にロールバックされる
+            conn.commit();
+
+            counterRepository.applyCompletions(deltas);
+        } finally {
+            updateLock.unlock();
+        }
+        rankRepairer.request(dirty);
+        return inserted;
+    }
+
+    /**
+     * 新しく記録する実績達成の順位を決める
+     * 実績の最後の達成より後の日時であれば、順位は「それまでの達成者数+1」（同じ日時であれば同順位）になる
+     * それより前の日時（インポートなど）の場合は、後ろの順位がずれるため順位を空にし、実績を振り直し対象にする
+     *
+     * @param inserted   新しく記録する実績達成
+     * @param doneCounts ロック済みの実績ID → 達成者数
+     * @param latest     実績ID → 記録済みの最後の達成
+     * @param dirty      順位の振り直しが必要になった実績IDを追加する
+     * @return 順位を付けた実績達成（実績・日時順）
+     */
+    static List<RankedRow> assignRanks(List<PlayerAdvancementRow> inserted, Map<Integer, Integer> doneCounts, Map<Integer, LatestCompletion> latest, Set<Integer> dirty) {
+        var sorted = new ArrayList<>(inserted);
+        sorted.sort(Comparator.comparingInt(PlayerAdvancementRow::advancementId)
+                .thenComparing(PlayerAdvancementRow::timestamp)
+                .thenComparingInt(PlayerAdvancementRow::playerId));
+
+        var ranked = new ArrayList<RankedRow>(sorted.size());
+        var advancementId = -1;
+        var done = 0;
+        LatestCompletion last = null;
+        for (var row : sorted) {
+            if (row.advancementId() != advancementId) {
+                advancementId = row.advancementId();
+                done = doneCounts.getOrDefault(advancementId, 0);
+                last = latest.get(advancementId);
+            }
+
+            var timestamp = row.timestamp().getTime();
+            Integer rank;
+            if (last == null || timestamp > last.timestamp()) {
+                rank = done + 1;
+            } else if (timestamp == last.timestamp() && last.rank() != null) {
+                rank = last.rank();
+            } else {
+                rank = null;
+                dirty.add(advancementId);
             }
-            pstmt.executeUpdate();
+            done++;
+            if (rank != null) {
+                last = new LatestCompletion(timestamp, rank);
+            }
+            ranked.add(new RankedRow(row, rank));
         }
+        return ranked;
     }
-    
+
+    /**
+     * 実績ごとに最後の達成の日時と順位を取得する
+     *
+     * @return 実績ID → 最後の達成（達成者がいない実績は含まない）
+     */
+    private Map<Integer, LatestCompletion> findLatestCompletions(Connection conn, List<PlayerAdvancementRow> rows) throws SQLException {
+        var advancementIds = new TreeSet<Integer>();
+        rows.forEach(row -> advancementIds.add(row.advancementId()));
+
+        var latest = new HashMap<Integer, LatestCompletion>();
+        var sql = """
+                SELECT pa.advancement_id, pa.timestamp, MIN(pa.completion_rank)
+                 FROM player_advancement pa
+                 JOIN (
+                     SELECT advancement_id, MAX(timestamp) AS timestamp
+                      FROM player_advancement
+                      WHERE advancement_id IN (%s)
+                      GROUP BY advancement_id
+                 ) AS latest ON pa.advancement_id = latest.advancement_id AND pa.timestamp = latest.timestamp
+                 GROUP BY pa.advancement_id, pa.timestamp;
+                """.formatted(String.join(", ", Collections.nCopies(advancementIds.size(), "?")));
+        try (var pstmt = conn.prepareStatement(sql)) {
+            var index = 1;
+            for (var advancementId : advancementIds) {
+                pstmt.setInt(index++, advancementId);
+            }
+            var rs = pstmt.executeQuery();
+            while (rs.next()) {
+                var rank = rs.getInt(3);
+                latest.put(rs.getInt(1), new LatestCompletion(rs.getTimestamp(2).getTime(), rs.wasNull() ? null : rank));
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * 記録済みの(プレイヤーID, 実績ID)の組み合わせを取得する
+     * 他のサーバーが同時に同じ組み合わせを追加してカウンターが二重に加算されないよう、行をロックする
+     *
+     * @return 記録済みの組み合わせ（{@link #toPair(int, int)}の値）
+     */
+    private HashSet<Long> findExistingPairs(Connection conn, List<PlayerAdvancementRow> rows) throws SQLException {
+        var existing = new HashSet<Long>();
+        var dialect = databaseManager.getDialect();
+        var sql = "SELECT player_id, advancement_id FROM player_advancement WHERE "
+                + dialect.pairsIn("player_id, advancement_id", rows.size()) + dialect.forUpdate() + ";";
+        try (var pstmt = conn.prepareStatement(sql)) {
+            var index = 1;
+            for (var row : rows) {
+                pstmt.setInt(index++, row.playerId());
+                pstmt.setInt(index++, row.advancementId());
+            }
+            var rs = pstmt.executeQuery();
+            while (rs.next()) {
+                existing.add(toPair(rs.getInt(1), rs.getInt(2)));
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * (プレイヤーID, 実績ID)の組み合わせを1つの値にする
+     */
+    private static long toPair(int playerId, int advancementId) {
+        return ((long) playerId << 32) | (advancementId & 0xFFFFFFFFL);
+    }
+
     /**
      * 実績キーから実績IDを取得する
+     * データベースにはアクセスしない
      * 
      * @param advancementKey 実績キー
      * @return 実績ID（見つからない場合は-1）
      */
     public int getAdvancementIdByKey(String advancementKey) {
-        try (var pstmt = databaseManager.getConnection().prepareStatement(
-                "SELECT id FROM advancement WHERE advancement_key = ?;"
-        )) {
-            pstmt.setString(1, advancementKey);
-            var rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt("id");
-            }
-        } catch (SQLException e) {
-            logger.log(Level.WARNING, "実績IDの取得に失敗しました", e);
-        }
-        return -1;
+        return keyToId.getOrDefault(advancementKey, -1);
+    }
+
+    /**
+     * 実績IDから実績キーを取得する
+     * データベースにはアクセスしない
+     *
+     * @param advancementId 実績ID
+     * @return 実績キー（見つからない場合はnull）
+     */
+    public String getAdvancementKey(int advancementId) {
+        var keys = idToKey;
+        return advancementId >= 0 && advancementId < keys.length ? keys[advancementId] : null;
     }
     
     /**
      * 指定された実績IDが存在するかを確認する
+     * データベースにはアクセスしない
      * 
      * @param advancementId 実績ID
      * @return 存在する場合true
      */
     public boolean isAdvancementIdExists(int advancementId) {
-        try (var pstmt = databaseManager.getConnection().prepareStatement(
-                "SELECT COUNT(*) FROM advancement WHERE id = ?;"
-        )) {
-            pstmt.setInt(1, advancementId);
-            var rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt(1) > 0;
-            }
-        } catch (SQLException e) {
-            logger.log(Level.WARNING, "実績IDの存在確認に失敗しました", e);
-        }
-        return false;
+        return getAdvancementKey(advancementId) != null;
+    }
+
+    /**
+     * プレイヤーの実績達成記録
+     *
+     * @param playerId      プレイヤーID
+     * @param advancementId 実績ID
+     * @param timestamp     達成日時
+     */
+    public record PlayerAdvancementRow(int playerId, int advancementId, Timestamp timestamp) {
+    }
+
+    /**
+     * 順位を付けた実績達成記録
+     *
+     * @param row  実績達成記録
+     * @param rank 達成順位（振り直しが必要な場合はnull）
+     */
+    record RankedRow(PlayerAdvancementRow row, Integer rank) {
+    }
+
+    /**
+     * 実績の最後の達成
+     *
+     * @param timestamp 達成日時（エポックミリ秒）
+     * @param rank      達成順位（振り直し待ちの場合はnull）
+     */
+    record LatestCompletion(long timestamp, Integer rank) {
     }
 }
\ No newline at end of file
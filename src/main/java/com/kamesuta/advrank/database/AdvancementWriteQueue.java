@@ -0,0 +1,396 @@
+package com.kamesuta.advrank.database;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 実績達成記録の書き込みキュー
+ * 実績達成イベントをキューに溜め、専用スレッドでまとめてデータベースに書き込む
+ * サーバーのメインスレッドはキューに追加するだけなので、データベースの遅延の影響を受けない
+ * キューが満杯の場合も待たずに退避用のキューに追加し、書き込みスレッドが続けて書き込む
+ * 退避用のキューにも上限があり、データベースの障害などで書き込めない状態が続いて両方が満杯になった場合は、
+ * メモリを使い続けないよう新しい記録を破棄する（破棄した記録はインポートで取り込み直せる）
+ */
+public class AdvancementWriteQueue implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(AdvancementWriteQueue.class.getName());
+
+    /**
+     * 書き込みに失敗したときの再試行回数
+     */
+    private static final int MAX_RETRIES = 3;
+    /**
+     * 停止時に残りの記録の書き込みを待つ時間（ミリ秒）
+     */
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    /**
+     * 破棄した記録の警告ログを出力する間隔（件数）
+     */
+    private static final long DROP_LOG_INTERVAL = 1000;
+
+    private final PlayerRepository playerRepository;
+    private final AdvancementRepository advancementRepository;
+    private final int batchSize;
+    private final long lingerMillis;
+
+    /**
+     * 書き込み待ちの記録
+     */
+    private final BlockingQueue<PendingRecord> queue;
+    /**
+     * キューが満杯のときに退避した記録
+     */
+    private final BlockingQueue<PendingRecord> overflow;
+    /**
+     * 書き込みスレッド
+     */
+    private final Thread writerThread;
+    /**
+     * 書き込み完了時のリスナー
+     */
+    private final List<Consumer<List<WrittenRecord>>> flushListeners = new CopyOnWriteArrayList<>();
+    /**
+     * 停止中か
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * キューに追加された件数
+     */
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    /**
+     * 書き込んだ件数
+     */
+    private final AtomicLong writtenCount = new AtomicLong();
+    /**
+     * 書き込み回数
+     */
+    private final AtomicLong batchCount = new AtomicLong();
+    /**
+     * 書き込みに失敗して破棄した件数
+     */
+    private final AtomicLong failedCount = new AtomicLong();
+    /**
+     * キューが満杯で退避用のキューに追加した回数
+     */
+    private final AtomicLong overflowCount = new AtomicLong();
+    /**
+     * 退避用のキューも満杯で破棄した件数
+     */
+    private final AtomicLong droppedCount = new AtomicLong();
+    /**
+     * キューの最大長
+     */
+    private final AtomicInteger maxDepth = new AtomicInteger();
+
+    /**
+     * コンストラクタ
+     * 書き込みスレッドを開始する
+     *
+     * @param playerRepository      プレイヤーリポジトリ
+     * @param advancementRepository 実績リポジトリ
+     * @param capacity              キューの最大件数
+     * @param overflowCapacity      退避用のキューの最大件数
+     * @param batchSize             1回の書き込みでまとめる最大件数
+     * @param lingerMillis          書き込み前にまとめるための待ち時間（ミリ秒）
+     */
+    public AdvancementWriteQueue(PlayerRepository playerRepository, AdvancementRepository advancementRepository, int capacity, int overflowCapacity, int batchSize, long lingerMillis) {
+        this.playerRepository = playerRepository;
+        this.advancementRepository = advancementRepository;
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerMillis = Math.max(0, lingerMillis);
+        this.queue = new LinkedBlockingQueue<>(Math.max(1, capacity));
+        this.overflow = new LinkedBlockingQueue<>(Math.max(1, overflowCapacity));
+        this.writerThread = new Thread(this::run, "AdvancementRanking-Writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * 実績達成記録をキューに追加する
+     * メインスレッドから呼び出されるため待たない（キューが満杯の場合は退避用のキューに追加し、それも満杯の場合は破棄する）
+     *
+     * @param uuid      プレイヤーのUUID
+     * @param name      プレイヤー名
+     * @param key       実績キー
+     * @param timestamp 達成日時（nullの場合は現在時刻）
+     */
+    public void submit(UUID uuid, String name, String key, @Nullable Timestamp timestamp) {
+        if (closed) {
+            throw new IllegalStateException("書き込みキューは停止しています");
+        }
+
+        // 書き込みまでの遅延で日時がずれないよう、追加時点の時刻を記録する
+        var record = PendingRecord.of(uuid, name, key, timestamp);
+        if (!queue.offer(record)) {
+            overflowCount.incrementAndGet();
+            if (!overflow.offer(record)) {
+                var dropped = droppedCount.incrementAndGet();
+                if (dropped % DROP_LOG_INTERVAL == 1) {
+                    logger.warning("書き込み待ちの記録が上限に達したため、実績達成記録を破棄しました (累計" + dropped + "件): " + record);
+                }
+                return;
+            }
+        }
+        enqueuedCount.incrementAndGet();
+        maxDepth.accumulateAndGet(getQueueDepth(), Math::max);
+    }
+
+    /**
+     * キューを通さずに記録をまとめて書き込む
+     * 呼び出し元のスレッドで書き込み、書き込み完了のリスナーにも通知する
+     * 大量の記録を書き込むインポートなど、書き込みの完了を待つ必要がある場合に使用する
+     *
+     * @param records 書き込む記録
+     * @return 書き込んだ記録
+     */
+    public List<WrittenRecord> writeNow(List<PendingRecord> records) throws SQLException {
+        if (records.isEmpty()) {
+            return List.of();
+        }
+        var written = write(records);
+        notifyFlushed(written);
+        return written;
+    }
+
+    /**
+     * 書き込み完了時のリスナーを追加する
+     * リスナーは書き込みスレッドから呼び出される
+     *
+     * @param listener 書き込んだ記録を受け取るリスナー
+     */
+    public void addFlushListener(Consumer<List<WrittenRecord>> listener) {
+        flushListeners.add(listener);
+    }
+
+    /**
+     * 書き込みスレッドの処理
+     */
+    private void run() {
+        var batch = new ArrayList<PendingRecord>(batchSize);
+        while (!closed || getQueueDepth() > 0) {
+            try {
+                // 最初の1件を待つ（退避した記録があればそちらから）
+                var first = overflow.poll();
+                if (first == null) {
+                    first = queue.poll(1, TimeUnit.SECONDS);
+                }
+                if (first == null) continue;
+                batch.add(first);
+
+                // 同じタイミングの記録をまとめるため少し待つ
+                if (lingerMillis > 0 && !closed && getQueueDepth() < batchSize - 1) {
+                    Thread.sleep(lingerMillis);
+                }
+                queue.drainTo(batch, batchSize - batch.size());
+                overflow.drainTo(batch, batchSize - batch.size());
+            } catch (InterruptedException e) {
+                // 割り込まれた場合も、取り出し済みの記録は書き込んでから終了する
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+                break;
+            }
+
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * 記録をまとめてデータベースに書き込む
+     * 失敗した場合は何度か再試行する
+     * 停止要求で再試行の待ちが中断された場合は、失敗回数に数えずにすぐ再試行する
+     *
+     * @param batch 書き込む記録
+     */
+    private void flush(List<PendingRecord> batch) {
+        var interrupted = false;
+        try {
+            for (var attempt = 1; ; ) {
+                try {
+                    var written = write(batch);
+                    writtenCount.addAndGet(batch.size());
+                    batchCount.incrementAndGet();
+                    notifyFlushed(written);
+                    return;
+                } catch (SQLException e) {
+                    if (attempt >= MAX_RETRIES) {
+                        failedCount.addAndGet(batch.size());
+                        logger.log(Level.SEVERE, "実績達成記録の書き込みに失敗しました (" + batch.size() + "件): " + batch, e);
+                        return;
+                    }
+                    logger.log(Level.WARNING, "実績達成記録の書き込みに失敗しました。再試行します (" + attempt + "/" + MAX_RETRIES + ")", e);
+                    try {
+                        Thread.sleep(1000L * attempt);
+                        attempt++;
+                    } catch (InterruptedException ie) {
+                        interrupted = true;
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 記録を集約して書き込む
+     * 同じプレイヤーの同じ実績は最も早い日時の1件にまとめる
+     *
+     * @param batch 書き込む記録
+     * @return 書き込んだ記録
+     */
+    private List<WrittenRecord> write(List<PendingRecord> batch) throws SQLException {
+        // プレイヤーと実績ごとに集約
+        var players = new LinkedHashMap<UUID, String>();
+        var earliest = new LinkedHashMap<PendingKey, Timestamp>();
+        for (var record : batch) {
+            // 後から来た名前を優先する
+            players.put(record.uuid(), record.name());
+            earliest.merge(new PendingKey(record.uuid(), record.key()), record.timestamp(), (a, b) -> a.before(b) ? a : b);
+        }
+
+        // IDを解決
+        var playerIds = new HashMap<UUID, Integer>();
+        for (var player : players.entrySet()) {
+            playerIds.put(player.getKey(), playerRepository.getOrCreatePlayerId(player.getKey(), player.getValue()));
+        }
+        var advancementIds = new HashMap<String, Integer>();
+        for (var key : earliest.keySet()) {
+            if (!advancementIds.containsKey(key.key())) {
+                advancementIds.put(key.key(), advancementRepository.getOrCreateAdvancementId(key.key()));
+            }
+        }
+
+        // まとめて書き込む
+        var rows = new ArrayList<AdvancementRepository.PlayerAdvancementRow>(earliest.size());
+        var written = new ArrayList<WrittenRecord>(earliest.size());
+        for (var entry : earliest.entrySet()) {
+            var key = entry.getKey();
+            int playerId = playerIds.get(key.uuid());
+            int advancementId = advancementIds.get(key.key());
+            rows.add(new AdvancementRepository.PlayerAdvancementRow(playerId, advancementId, entry.getValue()));
+            written.add(new WrittenRecord(key.uuid(), players.get(key.uuid()), playerId, key.key(), advancementId, entry.getValue()));
+        }
+        advancementRepository.recordPlayerAdvancements(rows);
+
+        return written;
+    }
+
+    /**
+     * 書き込み完了をリスナーに通知する
+     */
+    private void notifyFlushed(List<WrittenRecord> written) {
+        for (var listener : flushListeners) {
+            try {
+                listener.accept(written);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "書き込み完了の通知に失敗しました", e);
+            }
+        }
+    }
+
+    /**
+     * 書き込み待ちの件数を取得する
+     */
+    public int getQueueDepth() {
+        return queue.size() + overflow.size();
+    }
+
+    /**
+     * 書き込みキューの統計レポートを生成する
+     *
+     * @return フォーマットされた統計レポート
+     */
+    public String generateReport() {
+        long batches = batchCount.get();
+        double averageBatch = batches > 0 ? writtenCount.get() / (double) batches : 0;
+        return """
+            §a書き込み待ち: §f%d件 (最大: %d件)
+            §a追加: §f%d件 §a書き込み: §f%d件 (%d回, 平均%.1f件/回)
+            §eキュー満杯による退避: §f%d回 §c上限超過による破棄: §f%d件 §c書き込み失敗: §f%d件""".formatted(
+                getQueueDepth(), maxDepth.get(),
+                enqueuedCount.get(), writtenCount.get(), batches, averageBatch,
+                overflowCount.get(), droppedCount.get(), failedCount.get());
+    }
+
+    /**
+     * 書き込みスレッドを停止する
+     * 残っている記録は書き込みスレッドが全て書き込んでから終了するため、それを一定時間だけ待つ
+     * 書き込みは書き込みスレッドだけが行い、呼び出し元（メインスレッド）では書き込まない
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writerThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            logger.warning("書き込みが時間内に終わりませんでした。書き込まれていない記録があります (" + getQueueDepth() + "件)");
+        }
+    }
+
+    /**
+     * 書き込み待ちの実績達成記録
+     *
+     * @param uuid      プレイヤーのUUID
+     * @param name      プレイヤー名
+     * @param key       実績キー
+     * @param timestamp 達成日時
+     */
+    public record PendingRecord(UUID uuid, String name, String key, Timestamp timestamp) {
+        /**
+         * 書き込む記録を作成する
+         * データベースのTIMESTAMP型と一致させるため、日時は秒単位に切り捨てる
+         *
+         * @param uuid      プレイヤーのUUID
+         * @param name      プレイヤー名
+         * @param key       実績キー
+         * @param timestamp 達成日時（nullの場合は現在時刻）
+         * @return 書き込む記録
+         */
+        public static PendingRecord of(UUID uuid, String name, String key, @Nullable Timestamp timestamp) {
+            var millis = timestamp != null ? timestamp.getTime() : System.currentTimeMillis();
+            return new PendingRecord(uuid, name, key, new Timestamp(millis / 1000 * 1000));
+        }
+    }
+
+    /**
+     * 書き込んだ実績達成記録
+     * 既に記録済みでINSERT IGNOREにより無視されたものも含む
+     *
+     * @param uuid          プレイヤーのUUID
+     * @param name          プレイヤー名
+     * @param playerId      プレイヤーID
+     * @param key           実績キー
+     * @param advancementId 実績ID
+     * @param timestamp     達成日時
+     */
+    public record WrittenRecord(UUID uuid, String name, int playerId, String key, int advancementId, Timestamp timestamp) {
+    }
+
+    /**
+     * 集約用のキー
+     *
+     * @param uuid プレイヤーのUUID
+     * @param key  実績キー
+     */
+    private record PendingKey(UUID uuid, String key) {
+    }
+}
@@ -0,0 +1,221 @@
+package com.kamesuta.advrank.database;
+
+import org.bukkit.Bukkit;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.kamesuta.advrank.AdvRankingPlugin.app;
+
+/**
+ * 保存した達成順位（player_advancement.completion_rank）を振り直すジョブ
+ * 記録時の順位は「最新の達成」として付けるため、インポートなどで過去の日時の達成が追加されると、
+ * その実績の後ろの順位がずれる。ずれた実績はadvancement_counter.ranks_dirtyで記録し、
+ * 非同期でその実績だけ順位を振り直す
+ * 振り直す前にサーバーが停止した場合も、次の起動時にranks_dirtyから再開する
+ */
+public class CompletionRankRepairer {
+    private static final Logger logger = Logger.getLogger(CompletionRankRepairer.class.getName());
+
+    /**
+     * 振り直しを開始するまでの待ち時間（tick）
+     * インポート中は書き込みが続くため、まとめて振り直す
+     */
+    private static final long REPAIR_DELAY_TICKS = 100;
+
+    private final DatabaseManager databaseManager;
+
+    /**
+     * 振り直し待ちの実績ID
+     */
+    private final Set<Integer> pending = ConcurrentHashMap.newKeySet();
+    /**
+     * 順位がずれたまま、まだ振り直していない実績ID
+     * 振り直しの予約（{@link #pending}）と違い、振り直しを始めるまで残る
+     */
+    private final Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+    /**
+     * 振り直しを予約済みか
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    /**
+     * 振り直し完了時のリスナー
+     */
+    private final List<IntConsumer> repairListeners = new CopyOnWriteArrayList<>();
+
+    public CompletionRankRepairer(DatabaseManager databaseManager) {
+        this.databaseManager = databaseManager;
+    }
+
+    /**
+     * 実績の順位がずれたことを記録する
+     * 呼び出し元のトランザクション内で実行し、コミット後に{@link #request(Collection)}を呼ぶこと
+     *
+     * @param conn           トランザクション中の接続
+     * @param advancementIds 順位がずれた実績ID
+     */
+    void markDirty(Connection conn, Collection<Integer> advancementIds) throws SQLException {
+        if (advancementIds.isEmpty()) {
+            return;
+        }
+
+        var sql = "UPDATE advancement_counter SET ranks_dirty = TRUE WHERE advancement_id IN ("
+                + String.join(", ", Collections.nCopies(advancementIds.size(), "?")) + ");";
+        try (var pstmt = conn.prepareStatement(sql)) {
+            var index = 1;
+            for (var advancementId : advancementIds) {
+                pstmt.setInt(index++, advancementId);
+            }
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * 実績の順位の振り直しを予約する
+     *
+     * @param advancementIds 順位がずれた実績ID
+     */
+    void request(Collection<Integer> advancementIds) {
+        if (advancementIds.isEmpty()) {
+            return;
+        }
+        dirty.addAll(advancementIds);
+        pending.addAll(advancementIds);
+        schedule();
+    }
+
+    /**
+     * 実績の順位がずれている場合は、呼び出したスレッドで振り直す
+     * 保存した順位で読む位置を決める前に呼び出す（非同期スレッドから呼び出すこと）
+     *
+     * @param advancementId 実績ID
+     */
+    public void repairIfDirty(int advancementId) throws SQLException {
+        if (dirty.contains(advancementId)) {
+            repair(advancementId);
+        }
+    }
+
+    /**
+     * 振り直し完了時のリスナーを追加する
+     * リスナーは振り直したスレッド（非同期スレッド）から呼び出される
+     *
+     * @param listener 順位を振り直した実績IDを受け取るリスナー
+     */
+    public void addRepairListener(IntConsumer listener) {
+        repairListeners.add(listener);
+    }
+
+    /**
+     * 前回の起動中に振り直せなかった実績を読み込み、振り直しを予約する
+     */
+    public void resumePending() {
+        try (var conn = databaseManager.getConnection(); var stmt = conn.createStatement()) {
+            var rs = stmt.executeQuery("SELECT advancement_id FROM advancement_counter WHERE ranks_dirty;");
+            while (rs.next()) {
+                dirty.add(rs.getInt(1));
+                pending.add(rs.getInt(1));
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "順位の振り直し待ちの実績の読み込みに失敗しました", e);
+            return;
+        }
+        if (!pending.isEmpty()) {
+            logger.info("順位の振り直し待ちの実績があります (" + pending.size() + "件)");
+            schedule();
+        }
+    }
+
+    /**
+     * 振り直しを非同期で予約する
+     */
+    private void schedule() {
+        if (!app.isEnabled() || !scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        Bukkit.getScheduler().runTaskLaterAsynchronously(app, this::repairPending, REPAIR_DELAY_TICKS);
+    }
+
+    /**
+     * 振り直し待ちの実績の順位を全て振り直す
+     */
+    private void repairPending() {
+        scheduled.set(false);
+        for (var it = pending.iterator(); it.hasNext(); ) {
+            var advancementId = it.next();
+            it.remove();
+            try {
+                repair(advancementId);
+            } catch (SQLException e) {
+                // ranks_dirtyは残るため、次の起動時に再度振り直す
+                logger.log(Level.WARNING, "順位の振り直しに失敗しました: 実績ID " + advancementId, e);
+            }
+        }
+    }
+
+    /**
+     * 1つの実績の順位を振り直す
+     * 順位は同じ日時の達成者を同順位とする（RANK()と同じ）
+     *
+     * @param advancementId 実績ID
+     * @return 順位が変わった行数
+     */
+    public int repair(int advancementId) throws SQLException {
+        var startTime = System.currentTimeMillis();
+        pending.remove(advancementId);
+        int updated;
+        try (var conn = databaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+
+            // 振り直し中に同じ実績の達成が記録されないよう、カウンターの行をロックする
+            try (var pstmt = conn.prepareStatement("SELECT completed_count FROM advancement_counter WHERE advancement_id = ?"
+                    + databaseManager.getDialect().forUpdate() + ";")) {
+                pstmt.setInt(1, advancementId);
+                pstmt.executeQuery();
+            }
+
+            try (var pstmt = conn.prepareStatement(databaseManager.getDialect().repairRanksSql())) {
+                pstmt.setInt(1, advancementId);
+                pstmt.setInt(2, advancementId);
+                updated = pstmt.executeUpdate();
+            }
+
+            try (var pstmt = conn.prepareStatement("UPDATE advancement_counter SET ranks_dirty = FALSE WHERE advancement_id = ?;")) {
+                pstmt.setInt(1, advancementId);
+                pstmt.executeUpdate();
+            }
+            // カウンターのロック中に外すため、コミット後に順位がずれた場合は次の予約で再度記録される
+            dirty.remove(advancementId);
+            // 失敗した場合は接続の返却時にロールバックされる
+            conn.commit();
+        } catch (SQLException e) {
+            dirty.add(advancementId);
+            throw e;
+        }
+
+        logger.fine("順位を振り直しました: 実績ID " + advancementId + " (" + updated + "件, "
+                + (System.currentTimeMillis() - startTime) + "ms)");
+
+        // 保存した順位を読んでいるキャッシュを読み直させる
+        if (updated > 0) {
+            for (var listener : repairListeners) {
+                try {
+                    listener.accept(advancementId);
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, "順位の振り直しの通知に失敗しました", e);
+                }
+            }
+        }
+        return updated;
+    }
+}
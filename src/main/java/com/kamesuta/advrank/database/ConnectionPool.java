@@ -0,0 +1,373 @@
+package com.kamesuta.advrank.database;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * データベース接続プール
+ * 同時に使用できる接続数を制限し、貸し出し時に接続の生存確認を行う
+ * 切断された接続は破棄して作り直すため、データベースが再起動しても復帰できる
+ * 接続の確立や応答の待ち時間は接続URLで指定する（接続待ちのタイムアウトはプールの空きを待つ時間のみ）
+ * 貸し出した接続で作成したステートメントは、閉じ忘れても返却時に閉じる
+ */
+public class ConnectionPool implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(ConnectionPool.class.getName());
+
+    /**
+     * 最後に使われてからこの時間以内の接続は生存確認を省略する（ミリ秒）
+     */
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maximumPoolSize;
+    private final long connectionTimeoutMillis;
+    private final int validationTimeoutSeconds;
+
+    /**
+     * 貸し出し可能な接続数
+     */
+    private final Semaphore permits;
+    /**
+     * 空いている接続
+     */
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    /**
+     * 確立済みの物理接続数
+     */
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    /**
+     * 貸し出し回数
+     */
+    private final AtomicLong borrowCount = new AtomicLong();
+    /**
+     * 接続待ちでタイムアウトした回数
+     */
+    private final AtomicLong timeoutCount = new AtomicLong();
+    /**
+     * 生存確認に失敗して破棄した接続数
+     */
+    private final AtomicLong invalidCount = new AtomicLong();
+    /**
+     * 接続待ち時間の合計（ナノ秒）
+     */
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    /**
+     * クローズ済みか
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * コンストラクタ
+     *
+     * @param url                      接続URL
+     * @param username                 ユーザー名
+     * @param password                 パスワード
+     * @param maximumPoolSize          最大接続数
+     * @param connectionTimeoutMillis  接続待ちのタイムアウト（ミリ秒）
+     * @param validationTimeoutSeconds 生存確認のタイムアウト（秒）
+     */
+    public ConnectionPool(String url, String username, String password, int maximumPoolSize, long connectionTimeoutMillis, int validationTimeoutSeconds) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maximumPoolSize = Math.max(1, maximumPoolSize);
+        this.connectionTimeoutMillis = connectionTimeoutMillis;
+        this.validationTimeoutSeconds = Math.max(1, validationTimeoutSeconds);
+        this.permits = new Semaphore(this.maximumPoolSize, true);
+    }
+
+    /**
+     * 接続を借りる
+     * 使い終わったら必ずclose()すること（プールに返却される）
+     *
+     * @return 接続
+     * @throws SQLException 接続を確立できなかった場合、またはタイムアウトした場合
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("接続プールはクローズされています");
+        }
+
+        // 空き枠を待つ
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(connectionTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLTransientConnectionException("データベース接続の取得がタイムアウトしました (" + connectionTimeoutMillis + "ms)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("データベース接続の待機中に割り込まれました", e);
+        }
+        totalWaitNanos.addAndGet(System.nanoTime() - start);
+        borrowCount.incrementAndGet();
+
+        try {
+            PooledConnection pooled = takeValidConnection();
+            return pooled.borrow();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 生存確認済みの接続を取り出す
+     * 空いている接続が無い場合は新しく接続する
+     */
+    private PooledConnection takeValidConnection() throws SQLException {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            // 直前まで使われていた接続はそのまま使う
+            if (System.currentTimeMillis() - pooled.lastUsed < VALIDATION_BYPASS_MILLIS || isValid(pooled)) {
+                return pooled;
+            }
+            invalidCount.incrementAndGet();
+            discard(pooled);
+        }
+        return new PooledConnection(createConnection());
+    }
+
+    /**
+     * 物理接続を作成する
+     */
+    private Connection createConnection() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, username, password);
+        totalConnections.incrementAndGet();
+        return connection;
+    }
+
+    /**
+     * 接続が生きているか確認する
+     */
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.connection.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 物理接続を破棄する
+     */
+    private void discard(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        try {
+            pooled.connection.close();
+        } catch (SQLException e) {
+            logger.log(Level.FINE, "接続のクローズに失敗しました", e);
+        }
+    }
+
+    /**
+     * 接続をプールに返却する
+     */
+    private void release(PooledConnection pooled) {
+        try {
+            // 途中で失敗したトランザクションを残さない
+            if (!pooled.connection.getAutoCommit()) {
+                pooled.connection.rollback();
+                pooled.connection.setAutoCommit(true);
+            }
+            if (closed || pooled.connection.isClosed()) {
+                discard(pooled);
+            } else {
+                pooled.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(pooled);
+            }
+        } catch (SQLException e) {
+            // 状態を戻せない接続は破棄する
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * 空いている接続の生存確認を行い、切断された接続を破棄する
+     * 定期的に非同期スレッドから呼び出す
+     */
+    public void validateIdleConnections() {
+        for (PooledConnection pooled : idle) {
+            // 確認中に貸し出されないよう一旦取り出す
+            if (!idle.remove(pooled)) continue;
+            if (isValid(pooled)) {
+                idle.offerLast(pooled);
+            } else {
+                invalidCount.incrementAndGet();
+                discard(pooled);
+                logger.warning("切断されたデータベース接続を破棄しました");
+            }
+        }
+    }
+
+    /**
+     * 接続プールの統計レポートを生成する
+     *
+     * @return フォーマットされた統計レポート
+     */
+    public String generateReport() {
+        int active = maximumPoolSize - permits.availablePermits();
+        long borrows = borrowCount.get();
+        double averageWait = borrows > 0 ? totalWaitNanos.get() / (double) borrows / 1_000_000.0 : 0;
+        return """
+            §a接続数: §f%d (使用中: %d, 待機中: %d, 最大: %d)
+            §a貸し出し回数: §f%d §a平均待ち時間: §f%.3fms
+            §eタイムアウト: §f%d回 §e破棄した接続: §f%d件""".formatted(
+                totalConnections.get(), active, idle.size(), maximumPoolSize,
+                borrows, averageWait, timeoutCount.get(), invalidCount.get());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    /**
+     * プールで管理される接続
+     */
+    private class PooledConnection {
+        /**
+         * 物理接続
+         */
+        private final Connection connection;
+        /**
+         * 最後に返却された時刻
+         */
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * 貸し出し用のプロキシを作成する
+         * close()を呼ぶと物理接続は閉じずにプールへ返却される
+         */
+        private Connection borrow() {
+            AtomicBoolean returned = new AtomicBoolean(false);
+            // 貸し出し中に作成され、まだ閉じられていないステートメント
+            Set<Statement> statements = ConcurrentHashMap.newKeySet();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "close" -> {
+                        if (returned.compareAndSet(false, true)) {
+                            closeStatements(statements);
+                            release(this);
+                        }
+                        return null;
+                    }
+                    case "isClosed" -> {
+                        return returned.get() || connection.isClosed();
+                    }
+                    case "unwrap" -> {
+                        return connection.unwrap((Class<?>) args[0]);
+                    }
+                    case "equals" -> {
+                        return proxy == args[0];
+                    }
+                    case "hashCode" -> {
+                        return System.identityHashCode(proxy);
+                    }
+                    case "toString" -> {
+                        return "PooledConnection[" + connection + "]";
+                    }
+                }
+                if (returned.get()) {
+                    throw new SQLException("返却済みの接続は使用できません");
+                }
+                Object result;
+                try {
+                    result = method.invoke(connection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                // createStatement, prepareStatement, prepareCall
+                if (result instanceof Statement statement) {
+                    return track(statement, method.getReturnType(), (Connection) proxy, statements);
+                }
+                return result;
+            });
+        }
+
+        /**
+         * ステートメントを返却時に閉じるよう記録し、貸し出し用のプロキシで包む
+         * getConnection()は物理接続ではなく貸し出し用のプロキシを返す
+         *
+         * @param statement  ステートメント
+         * @param type       ステートメントの型（Statement, PreparedStatement, CallableStatement）
+         * @param borrowed   貸し出し用の接続
+         * @param statements 閉じられていないステートメント
+         */
+        private Statement track(Statement statement, Class<?> type, Connection borrowed, Set<Statement> statements) {
+            statements.add(statement);
+            return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "close" -> {
+                        statements.remove(statement);
+                        statement.close();
+                        return null;
+                    }
+                    case "getConnection" -> {
+                        return borrowed;
+                    }
+                    case "unwrap" -> {
+                        return statement.unwrap((Class<?>) args[0]);
+                    }
+                    case "equals" -> {
+                        return proxy == args[0];
+                    }
+                    case "hashCode" -> {
+                        return System.identityHashCode(proxy);
+                    }
+                    case "toString" -> {
+                        return "PooledStatement[" + statement + "]";
+                    }
+                }
+                try {
+                    return method.invoke(statement, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        }
+    }
+
+    /**
+     * 閉じられていないステートメントを閉じる
+     * 閉じ忘れたステートメントが物理接続に残り続けないようにする
+     */
+    private static void closeStatements(Set<Statement> statements) {
+        for (Statement statement : List.copyOf(statements)) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                logger.log(Level.FINE, "ステートメントのクローズに失敗しました", e);
+            }
+        }
+        statements.clear();
+    }
+}
@@ -0,0 +1,262 @@
+package com.kamesuta.advrank.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+/**
+ * 達成者数と総プレイヤー数のカウンターを管理するリポジトリクラス
+ * COUNT(*)はテーブルの行数に比例して遅くなるため、件数をカウンターテーブルに保持し、メモリにも複製する
+ * カウンターテーブルはplayer, player_advancementへの追加と同じトランザクションで更新し、
+ * メモリ上の値はコミット後に更新する
+ * 再構築はカウンターを加算するトランザクションが終わるのを待ってから行い、再構築中の加算は待たせる
+ */
+public class CounterRepository {
+    private static final Logger logger = Logger.getLogger(CounterRepository.class.getName());
+
+    /**
+     * 総プレイヤー数のカウンター名
+     */
+    private static final String PLAYER_COUNT = "player_count";
+
+    private final DatabaseManager databaseManager;
+
+    /**
+     * 実績ID → 達成者数（添字が実績ID）
+     * 更新時は排他し、最後に参照を書き換えて他のスレッドに公開する
+     */
+    private volatile int[] completedCounts = new int[0];
+    /**
+     * 総プレイヤー数
+     */
+    private volatile int playerCount;
+    /**
+     * 加算（トランザクションの開始からメモリへの反映まで）と再構築を排他するロック
+     * 加算は同時に行えるよう読み込みロック、再構築は書き込みロックを使う
+     */
+    private final ReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+
+    public CounterRepository(DatabaseManager databaseManager) throws SQLException {
+        this.databaseManager = databaseManager;
+        load();
+    }
+
+    /**
+     * カウンターテーブルからメモリ上のカウンターを読み込む
+     */
+    private void load() throws SQLException {
+        var counts = new int[0];
+        var players = 0;
+        try (var conn = databaseManager.getConnection(); var stmt = conn.createStatement()) {
+            var rs = stmt.executeQuery("SELECT advancement_id, completed_count FROM advancement_counter;");
+            while (rs.next()) {
+                var advancementId = rs.getInt(1);
+                if (advancementId >= counts.length) {
+                    counts = Arrays.copyOf(counts, Math.max(advancementId + 1, counts.length * 2));
+                }
+                counts[advancementId] = rs.getInt(2);
+            }
+
+            rs = stmt.executeQuery("SELECT value FROM global_counter WHERE name = '" + PLAYER_COUNT + "';");
+            if (rs.next()) {
+                players = rs.getInt(1);
+            }
+        }
+
+        synchronized (this) {
+            completedCounts = counts;
+            playerCount = players;
+        }
+    }
+
+    /**
+     * 総プレイヤー数を取得する
+     * データベースにはアクセスしない
+     */
+    public int getPlayerCount() {
+        return playerCount;
+    }
+
+    /**
+     * 実績の達成者数を取得する
+     * データベースにはアクセスしない
+     *
+     * @param advancementId 実績ID
+     * @return 達成者数
+     */
+    public int getCompletedCount(int advancementId) {
+        var counts = completedCounts;
+        return advancementId >= 0 && advancementId < counts.length ? counts[advancementId] : 0;
+    }
+
+    /**
+     * 実績の達成者数をロックして取得する
+     * 呼び出し元のトランザクションが終わるまで、同じ実績への他の書き込みを待たせる
+     *
+     * @param conn           トランザクション中の接続
+     * @param advancementIds 実績ID
+     * @return 実績ID → 達成者数（達成者がいない実績は含まない）
+     */
+    Map<Integer, Integer> lockCompletedCounts(Connection conn, Collection<Integer> advancementIds) throws SQLException {
+        var counts = new HashMap<Integer, Integer>();
+        if (advancementIds.isEmpty()) {
+            return counts;
+        }
+
+        var sql = "SELECT advancement_id, completed_count FROM advancement_counter WHERE advancement_id IN ("
+                + String.join(", ", Collections.nCopies(advancementIds.size(), "?")) + ")" + databaseManager.getDialect().forUpdate() + ";";
+        try (var pstmt = conn.prepareStatement(sql)) {
+            var index = 1;
+            for (var advancementId : advancementIds) {
+                pstmt.setInt(index++, advancementId);
+            }
+            var rs = pstmt.executeQuery();
+            while (rs.next()) {
+                counts.put(rs.getInt(1), rs.getInt(2));
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * カウンターを加算する間に保持するロックを取得する
+     * 加算するトランザクションを開始する前にロックし、メモリ上のカウンターに反映してから解放すること
+     * 再構築中はロックできるまで待つ
+     */
+    Lock updateLock() {
+        return rebuildLock.readLock();
+    }
+
+    /**
+     * 総プレイヤー数のカウンターを加算する
+     * 呼び出し元のトランザクション内で実行し、コミット後に{@link #applyPlayers(int)}を呼ぶこと
+     *
+     * @param conn  トランザクション中の接続
+     * @param delta 追加したプレイヤー数
+     */
+    void addPlayers(Connection conn, int delta) throws SQLException {
+        var dialect = databaseManager.getDialect();
+        var sql = "INSERT INTO global_counter (name, value) VALUES (?, ?)"
+                + dialect.onConflictUpdate("name", "value = value + " + dialect.inserted("value")) + ";";
+        try (var pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, PLAYER_COUNT);
+            pstmt.setLong(2, delta);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * 実績の達成者数のカウンターを加算する
+     * 呼び出し元のトランザクション内で実行し、コミット後に{@link #applyCompletions(Map)}を呼ぶこと
+     *
+     * @param conn   トランザクション中の接続
+     * @param deltas 実績ID → 追加した達成者数
+     */
+    void addCompletions(Connection conn, Map<Integer, Integer> deltas) throws SQLException {
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        var dialect = databaseManager.getDialect();
+        var sql = "INSERT INTO advancement_counter (advancement_id, completed_count) VALUES "
+                + String.join(", ", Collections.nCopies(deltas.size(), "(?, ?)"))
+                + dialect.onConflictUpdate("advancement_id", "completed_count = completed_count + " + dialect.inserted("completed_count")) + ";";
+        try (var pstmt = conn.prepareStatement(sql)) {
+            var index = 1;
+            for (var entry : deltas.entrySet()) {
+                pstmt.setInt(index++, entry.getKey());
+                pstmt.setInt(index++, entry.getValue());
+            }
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * コミットしたプレイヤー数の加算をメモリ上のカウンターに反映する
+     */
+    synchronized void applyPlayers(int delta) {
+        playerCount += delta;
+    }
+
+    /**
+     * コミットした達成者数の加算をメモリ上のカウンターに反映する
+     */
+    synchronized void applyCompletions(Map<Integer, Integer> deltas) {
+        var counts = completedCounts;
+        for (var entry : deltas.entrySet()) {
+            int advancementId = entry.getKey();
+            if (advancementId >= counts.length) {
+                // 配列を拡張する
+                counts = Arrays.copyOf(counts, Math.max(advancementId + 1, counts.length * 2));
+            }
+            counts[advancementId] += entry.getValue();
+        }
+        completedCounts = counts;
+    }
+
+    /**
+     * カウンターをplayer, player_advancementテーブルから数え直す
+     * カウンターがずれた場合（手動でのデータ削除など）の修復に使用する
+     *
+     * @return 数え直した結果
+     */
+    public RebuildResult rebuild() throws SQLException {
+        var startTime = System.currentTimeMillis();
+        // コミットしたがメモリに反映していない加算があると、読み込んだ値に後から二重に加算されるため、
+        // 加算を全て待たせてから数え直し、読み込みまで終える
+        var lock = rebuildLock.writeLock();
+        lock.lock();
+        try {
+            try (var conn = databaseManager.getConnection()) {
+                conn.setAutoCommit(false);
+                var dialect = databaseManager.getDialect();
+                try (var stmt = conn.createStatement()) {
+                    // 行を削除せずに達成者数だけを書き換え、順位の振り直し待ち（ranks_dirty）は残す
+                    // （WHERE TRUEはSQLiteでON CONFLICTを結合条件と区別するために必要）
+                    stmt.executeUpdate("""
+                            INSERT INTO advancement_counter (advancement_id, completed_count)
+                             SELECT advancement_id, COUNT(*) FROM player_advancement WHERE TRUE GROUP BY advancement_id
+                            """ + dialect.onConflictUpdate("advancement_id", "completed_count = " + dialect.inserted("completed_count")) + ";");
+                    // 達成者がいなくなった実績
+                    stmt.executeUpdate("""
+                            UPDATE advancement_counter SET completed_count = 0
+                             WHERE completed_count <> 0 AND NOT EXISTS (
+                                 SELECT 1 FROM player_advancement pa WHERE pa.advancement_id = advancement_counter.advancement_id);
+                            """);
+                    stmt.executeUpdate("""
+                            REPLACE INTO global_counter (name, value)
+                             SELECT '%s', COUNT(*) FROM player;
+                            """.formatted(PLAYER_COUNT));
+                }
+                conn.commit();
+            }
+
+            load();
+        } finally {
+            lock.unlock();
+        }
+        var result = new RebuildResult(playerCount, (int) Arrays.stream(completedCounts).filter(count -> count > 0).count(),
+                System.currentTimeMillis() - startTime);
+        logger.info("カウンターを再構築しました (プレイヤー: " + result.playerCount() + "人, 実績: " + result.advancementCount()
+                + "件, " + result.elapsedMillis() + "ms)");
+        return result;
+    }
+
+    /**
+     * カウンターの再構築結果
+     *
+     * @param playerCount      総プレイヤー数
+     * @param advancementCount 達成者がいる実績の数
+     * @param elapsedMillis    処理時間（ミリ秒）
+     */
+    public record RebuildResult(int playerCount, int advancementCount, long elapsedMillis) {
+    }
+}
@@ -1,115 +1,66 @@
 package com.kamesuta.advrank.database;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 import static com.kamesuta.advrank.AdvRankingPlugin.app;
 
 /**
  * データベース接続とテーブル管理を行うクラス
- * MySQL接続の初期化とテーブル作成を担当する
+ * 接続プールの初期化とスキーママイグレーションの適用を担当する
+ * 使用するデータベース（MySQLまたはSQLite）はconfig.ymlのstorage.typeで選択する
  */
 public class DatabaseManager implements AutoCloseable {
-    private static final Logger logger = Logger.getLogger(DatabaseManager.class.getName());
-
-    private final Connection conn;
+    private final SqlDialect dialect;
+    private final ConnectionPool pool;
 
     /**
      * コンストラクタ
-     * データベース接続を確立し、必要なテーブルを作成する
+     * 接続プールを作成し、未適用のスキーママイグレーションを適用する
      */
     public DatabaseManager() throws SQLException {
-        this.conn = createConnection();
-        initializeTables();
+        var config = app.getConfig();
+        this.dialect = SqlDialect.of(config.getString("storage.type", "mysql"));
+        this.pool = dialect.createPool(config);
+        try {
+            new MigrationRunner(this).migrate();
+        } catch (SQLException e) {
+            pool.close();
+            throw e;
+        }
     }
 
     /**
-     * データベース接続を作成する
+     * 使用しているデータベースの方言を取得する
      */
-    private Connection createConnection() throws SQLException {
-        var config = app.getConfig();
-        // 接続URLを構築（Java21のテキストブロック使用）
-        var url = """
-                jdbc:mysql://%s:%s/%s
-                """.formatted(
-                config.getString("mysql.host"),
-                config.getString("mysql.port"),
-                config.getString("mysql.databaseName")
-        ).strip();
-
-        var username = config.getString("mysql.username");
-        var password = config.getString("mysql.password");
-
-        // データベースに接続
-        return DriverManager.getConnection(url, username, password);
+    public SqlDialect getDialect() {
+        return dialect;
     }
 
     /**
-     * 必要なテーブルを作成する
-     * player, advancement, player_advancementテーブルを初期化
+     * プールからデータベース接続を借りる
+     * 使い終わったら必ずclose()してプールに返却すること
      */
-    private void initializeTables() throws SQLException {
-        try (var stmt = conn.createStatement()) {
-            // playerテーブル：プレイヤー情報を格納
-            stmt.execute("""
-                    CREATE TABLE IF NOT EXISTS player (
-                        id INT AUTO_INCREMENT PRIMARY KEY,
-                        uuid BINARY(16) UNIQUE NOT NULL,
-                        name VARCHAR(16) NOT NULL,
-                        INDEX idx_uuid (uuid)
-                    );
-                    """);
-
-            // advancementテーブル：実績情報を格納
-            stmt.execute("""
-                    CREATE TABLE IF NOT EXISTS advancement (
-                        id INT AUTO_INCREMENT PRIMARY KEY,
-                        advancement_key VARCHAR(255) UNIQUE NOT NULL
-                    );
-                    """);
-
-            // player_advancementテーブル：プレイヤーの実績達成記録を格納
-            stmt.execute("""
-                    CREATE TABLE IF NOT EXISTS player_advancement (
-                        id INT AUTO_INCREMENT PRIMARY KEY,
-                        player_id INT NOT NULL,
-                        advancement_id INT NOT NULL,
-                        timestamp TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
-                        UNIQUE KEY unique_player_advancement (player_id, advancement_id),
-                        FOREIGN KEY (player_id) REFERENCES player(id),
-                        FOREIGN KEY (advancement_id) REFERENCES advancement(id),
-                        INDEX idx_advancement_id (advancement_id),
-                        INDEX idx_timestamp (timestamp)
-                    );
-                    """);
-        }
+    public Connection getConnection() throws SQLException {
+        return pool.getConnection();
     }
 
     /**
-     * データベース接続を取得する
+     * 待機中の接続の生存確認を行い、切断された接続を破棄する
      */
-    public Connection getConnection() {
-        return conn;
+    public void pingDatabase() {
+        pool.validateIdleConnections();
     }
 
     /**
-     * データベースにpingを送信して接続を維持する
+     * 接続プールの統計レポートを生成する
      */
-    public void pingDatabase() {
-        try (var stmt = conn.createStatement()) {
-            stmt.executeQuery("SELECT 1;");
-        } catch (SQLException e) {
-            logger.log(Level.SEVERE, "KeepAliveパケット(ping)の送信に失敗しました", e);
-        }
+    public String generatePoolReport() {
+        return pool.generateReport();
     }
 
     @Override
-    public void close() throws SQLException {
-        if (conn != null) {
-            conn.close();
-        }
+    public void close() {
+        pool.close();
     }
 }
\ No newline at end of file
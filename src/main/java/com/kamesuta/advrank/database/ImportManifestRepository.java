@@ -0,0 +1,95 @@
+package com.kamesuta.advrank.database;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * インポート済みファイルの記録（マニフェスト）に関するデータベース操作を担当するリポジトリクラス
+ * 前回のインポートから変更されていないファイルを読み飛ばすために使用する
+ */
+public class ImportManifestRepository {
+    private static final Logger logger = Logger.getLogger(ImportManifestRepository.class.getName());
+
+    private final DatabaseManager databaseManager;
+
+    public ImportManifestRepository(DatabaseManager databaseManager) {
+        this.databaseManager = databaseManager;
+    }
+
+    /**
+     * 全てのインポート済みファイルの記録を読み込む
+     *
+     * @return ファイル名 → 記録
+     */
+    public Map<String, ManifestEntry> loadAll() throws SQLException {
+        var entries = new HashMap<String, ManifestEntry>();
+        try (var conn = databaseManager.getConnection(); var pstmt = conn.prepareStatement(
+                "SELECT file_name, size, modified_at, hash FROM import_manifest;"
+        )) {
+            var rs = pstmt.executeQuery();
+            while (rs.next()) {
+                var entry = new ManifestEntry(rs.getString(1), rs.getLong(2), rs.getLong(3), rs.getBytes(4));
+                entries.put(entry.fileName(), entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * インポートしたファイルの記録をまとめて保存する
+     * 既に記録があるファイルは上書きする
+     *
+     * @param entries 保存する記録
+     */
+    public void saveAll(Collection<ManifestEntry> entries) throws SQLException {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        var dialect = databaseManager.getDialect();
+        var assignments = "size = %s, modified_at = %s, hash = %s, imported_at = CURRENT_TIMESTAMP".formatted(
+                dialect.inserted("size"), dialect.inserted("modified_at"), dialect.inserted("hash"));
+        var sql = "INSERT INTO import_manifest (file_name, size, modified_at, hash) VALUES "
+                + String.join(", ", Collections.nCopies(entries.size(), "(?, ?, ?, ?)"))
+                + dialect.onConflictUpdate("file_name", assignments) + ";";
+        try (var conn = databaseManager.getConnection(); var pstmt = conn.prepareStatement(sql)) {
+            var index = 1;
+            for (var entry : entries) {
+                pstmt.setString(index++, entry.fileName());
+                pstmt.setLong(index++, entry.size());
+                pstmt.setLong(index++, entry.modifiedAt());
+                pstmt.setBytes(index++, entry.hash());
+            }
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * インポート済みファイルの記録
+     *
+     * @param fileName   ファイル名
+     * @param size       ファイルサイズ（バイト）
+     * @param modifiedAt 最終更新日時（エポックミリ秒）
+     * @param hash       内容のSHA-256ハッシュ
+     */
+    public record ManifestEntry(String fileName, long size, long modifiedAt, byte[] hash) {
+        /**
+         * ファイルサイズと最終更新日時が一致するか確認する（ファイルを開かずに比較できる）
+         */
+        public boolean matchesMetadata(long size, long modifiedAt) {
+            return this.size == size && this.modifiedAt == modifiedAt;
+        }
+
+        /**
+         * 内容のハッシュが一致するか確認する
+         */
+        public boolean matchesHash(byte[] hash) {
+            return Arrays.equals(this.hash, hash);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.kamesuta.advrank.database;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import static com.kamesuta.advrank.AdvRankingPlugin.app;
+
+/**
+ * スキーママイグレーションを適用するクラス
+ * プラグインのjarに同梱したSQL（db/migration/{方言}/V{バージョン}__{説明}.sql）をバージョン順に適用し、
+ * 適用済みのバージョンをschema_versionテーブルに記録する
+ * 起動時に未適用のマイグレーションのみを実行するため、既存のデータベースもそのまま新しいスキーマへ移行できる
+ */
+public class MigrationRunner {
+    private static final Logger logger = Logger.getLogger(MigrationRunner.class.getName());
+
+    /**
+     * マイグレーションSQLのリソースの場所
+     */
+    private static final String MIGRATION_PATH = "db/migration/";
+
+    private final DatabaseManager databaseManager;
+
+    public MigrationRunner(DatabaseManager databaseManager) {
+        this.databaseManager = databaseManager;
+    }
+
+    /**
+     * 未適用のマイグレーションをバージョン順に適用する
+     */
+    public void migrate() throws SQLException {
+        // jar内のファイルは一覧できないため、方言ごとに列挙したものを使用する
+        var dialect = databaseManager.getDialect();
+        var migrations = dialect.migrations().stream().map(Migration::parse).toList();
+
+        try (var conn = databaseManager.getConnection()) {
+            dialect.acquireMigrationLock(conn);
+            try {
+                createVersionTable(conn);
+                var applied = loadAppliedVersions(conn);
+
+                var latest = migrations.get(migrations.size() - 1).version();
+                var current = applied.stream().mapToInt(Integer::intValue).max().orElse(0);
+                if (current > latest) {
+                    logger.warning("データベースのスキーマがこのプラグインより新しいバージョンです (データベース: V" + current + ", プラグイン: V" + latest + ")");
+                }
+
+                for (var migration : migrations) {
+                    if (applied.contains(migration.version())) {
+                        continue;
+                    }
+                    apply(conn, migration);
+                }
+            } finally {
+                dialect.releaseMigrationLock(conn);
+            }
+        }
+    }
+
+    /**
+     * 1つのマイグレーションを適用し、schema_versionに記録する
+     * MySQLのDDLはトランザクションで戻せないため、文ごとに実行し、全て成功した場合のみ記録する
+     * 途中で失敗した場合は記録されず、次の起動時に同じマイグレーションを最初から実行し直す
+     * そのため、マイグレーションの各文は適用済みの状態で再実行しても失敗しないように書くこと
+     * （MySQLではinformation_schemaで適用済みか確認し、未適用の場合のみ実行する）
+     */
+    private void apply(Connection conn, Migration migration) throws SQLException {
+        var statements = readStatements(migration);
+        var startTime = System.currentTimeMillis();
+
+        try (var stmt = conn.createStatement()) {
+            for (var sql : statements) {
+                stmt.execute(sql);
+            }
+        } catch (SQLException e) {
+            throw new SQLException("マイグレーションの適用に失敗しました: " + migration.fileName(), e);
+        }
+        var elapsed = System.currentTimeMillis() - startTime;
+
+        try (var pstmt = conn.prepareStatement("""
+                INSERT INTO schema_version (version, description, execution_millis) VALUES (?, ?, ?);
+                """)) {
+            pstmt.setInt(1, migration.version());
+            pstmt.setString(2, migration.description());
+            pstmt.setLong(3, elapsed);
+            pstmt.executeUpdate();
+        }
+
+        logger.info("マイグレーションを適用しました: V" + migration.version() + " " + migration.description()
+                + " (" + elapsed + "ms)");
+    }
+
+    /**
+     * schema_versionテーブルを作成する
+     */
+    private void createVersionTable(Connection conn) throws SQLException {
+        try (var stmt = conn.createStatement()) {
+            stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS schema_version (
+                        version INT PRIMARY KEY,
+                        description VARCHAR(255) NOT NULL,
+                        execution_millis BIGINT NOT NULL,
+                        applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+                    );
+                    """);
+        }
+    }
+
+    /**
+     * 適用済みのバージョンを取得する
+     */
+    private Set<Integer> loadAppliedVersions(Connection conn) throws SQLException {
+        var versions = new HashSet<Integer>();
+        try (var stmt = conn.createStatement()) {
+            var rs = stmt.executeQuery("SELECT version FROM schema_version;");
+            while (rs.next()) {
+                versions.add(rs.getInt(1));
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * マイグレーションSQLを読み込み、文ごとに分割する
+     */
+    private List<String> readStatements(Migration migration) throws SQLException {
+        var resource = app.getResource(MIGRATION_PATH + databaseManager.getDialect().name() + "/" + migration.fileName());
+        if (resource == null) {
+            throw new SQLException("マイグレーションが見つかりません: " + migration.fileName());
+        }
+
+        String script;
+        try (resource) {
+            script = new String(resource.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new SQLException("マイグレーションの読み込みに失敗しました: " + migration.fileName(), e);
+        }
+        return splitStatements(script);
+    }
+
+    /**
+     * SQLを文ごとに分割する
+     * 「--」で始まる行はコメントとして無視し、「;」で終わる行で文を区切る
+     *
+     * @param script SQL
+     * @return 文のリスト
+     */
+    static List<String> splitStatements(String script) {
+        var statements = new ArrayList<String>();
+        var current = new StringBuilder();
+        for (var line : script.split("\\R")) {
+            if (line.strip().startsWith("--")) {
+                continue;
+            }
+            current.append(line).append('\n');
+            if (line.strip().endsWith(";")) {
+                statements.add(current.toString().strip());
+                current.setLength(0);
+            }
+        }
+        if (!current.toString().isBlank()) {
+            statements.add(current.toString().strip());
+        }
+        return statements;
+    }
+
+    /**
+     * マイグレーション
+     *
+     * @param version     バージョン
+     * @param description 説明
+     * @param fileName    リソースのファイル名
+     */
+    record Migration(int version, String description, String fileName) {
+        /**
+         * ファイル名（V{バージョン}__{説明}.sql）からマイグレーションを作成する
+         */
+        static Migration parse(String fileName) {
+            var separator = fileName.indexOf("__");
+            var version = Integer.parseInt(fileName.substring(1, separator));
+            var description = fileName.substring(separator + 2, fileName.length() - ".sql".length()).replace('_', ' ');
+            return new Migration(version, description, fileName);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.kamesuta.advrank.database;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * MySQL用の方言
+ * 複数のサーバーから同じデータベースに接続できる
+ */
+public class MySqlDialect implements SqlDialect {
+    /**
+     * 複数のサーバーが同時にマイグレーションしないためのロック名
+     */
+    private static final String LOCK_NAME = "advrank_schema_migration";
+    /**
+     * ロックの待機時間（秒）
+     */
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    @Override
+    public String name() {
+        return "mysql";
+    }
+
+    @Override
+    public ConnectionPool createPool(ConfigurationSection config) {
+        // 接続の確立と応答の待ち時間（データベースのホストが応答しない場合に呼び出し元が止まり続けないようにする）
+        var connectTimeoutMillis = config.getInt("mysql.pool.connectTimeoutMillis", 5000);
+        var socketTimeoutMillis = config.getInt("mysql.pool.socketTimeoutMillis", 60000);
+
+        // 接続URLを構築（Java21のテキストブロック使用）
+        var url = """
+                jdbc:mysql://%s:%s/%s?connectTimeout=%d&socketTimeout=%d
+                """.formatted(
+                config.getString("mysql.host"),
+                config.getString("mysql.port"),
+                config.getString("mysql.databaseName"),
+                connectTimeoutMillis,
+                socketTimeoutMillis
+        ).strip();
+
+        var username = config.getString("mysql.username");
+        var password = config.getString("mysql.password");
+
+        // 接続プールの設定
+        var maximumPoolSize = config.getInt("mysql.pool.maximumPoolSize", 10);
+        var connectionTimeoutMillis = config.getLong("mysql.pool.connectionTimeoutMillis", 5000);
+        var validationTimeoutSeconds = config.getInt("mysql.pool.validationTimeoutSeconds", 3);
+
+        return new ConnectionPool(url, username, password, maximumPoolSize, connectionTimeoutMillis, validationTimeoutSeconds);
+    }
+
+    @Override
+    public List<String> migrations() {
+        return List.of(
+                "V1__baseline.sql",
+                "V2__ranking_indexes.sql",
+                "V3__player_advancement_primary_key.sql",
+                "V4__counters.sql",
+                "V5__completion_rank.sql",
+                "V6__player_name_index.sql",
+                "V7__completion_rank_index.sql"
+        );
+    }
+
+    @Override
+    public void acquireMigrationLock(Connection conn) throws SQLException {
+        try (var pstmt = conn.prepareStatement("SELECT GET_LOCK(?, ?);")) {
+            pstmt.setString(1, LOCK_NAME);
+            pstmt.setInt(2, LOCK_TIMEOUT_SECONDS);
+            var rs = pstmt.executeQuery();
+            if (!rs.next() || rs.getInt(1) != 1) {
+                throw new SQLException("マイグレーションのロックを取得できませんでした");
+            }
+        }
+    }
+
+    @Override
+    public void releaseMigrationLock(Connection conn) throws SQLException {
+        try (var pstmt = conn.prepareStatement("SELECT RELEASE_LOCK(?);")) {
+            pstmt.setString(1, LOCK_NAME);
+            pstmt.executeQuery();
+        }
+    }
+
+    @Override
+    public String insertIgnoreInto(String table) {
+        return "INSERT IGNORE INTO " + table;
+    }
+
+    @Override
+    public String onConflictUpdate(String keyColumns, String assignments) {
+        return " ON DUPLICATE KEY UPDATE " + assignments;
+    }
+
+    @Override
+    public String inserted(String column) {
+        return "VALUES(" + column + ")";
+    }
+
+    @Override
+    public String forUpdate() {
+        return " FOR UPDATE";
+    }
+
+    @Override
+    public String pairsIn(String columns, int count) {
+        return "(" + columns + ") IN (" + String.join(", ", Collections.nCopies(count, "(?, ?)")) + ")";
+    }
+
+    @Override
+    public String repairRanksSql() {
+        return """
+                UPDATE player_advancement pa
+                 JOIN (
+                     SELECT player_id, RANK() OVER (ORDER BY timestamp ASC) AS completion_rank
+                      FROM player_advancement
+                      WHERE advancement_id = ?
+                 ) AS ranked ON pa.player_id = ranked.player_id
+                 SET pa.completion_rank = ranked.completion_rank
+                 WHERE pa.advancement_id = ? AND NOT (pa.completion_rank <=> ranked.completion_rank);
+                """;
+    }
+}
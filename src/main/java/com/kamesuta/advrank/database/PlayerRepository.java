@@ -1,52 +1,179 @@
 package com.kamesuta.advrank.database;
 
 import com.kamesuta.advrank.util.AdvancementUtil;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * プレイヤー関連のデータベース操作を担当するリポジトリクラス
  * プレイヤー情報のCRUD操作を提供する
+ * UUIDからプレイヤーIDと最後に記録した名前をキャッシュし、名前が変わった時だけ更新する
  */
 public class PlayerRepository {
     private static final Logger logger = Logger.getLogger(PlayerRepository.class.getName());
     
     private final DatabaseManager databaseManager;
+    private final CounterRepository counterRepository;
+
+    /**
+     * UUID → プレイヤーIDと名前のキャッシュ
+     */
+    private final Map<UUID, CachedPlayer> cache = new ConcurrentHashMap<>();
+    /**
+     * キャッシュの最大件数
+     */
+    private final int maxCacheSize;
     
-    public PlayerRepository(DatabaseManager databaseManager) {
+    public PlayerRepository(DatabaseManager databaseManager, CounterRepository counterRepository, int maxCacheSize) {
         this.databaseManager = databaseManager;
+        this.counterRepository = counterRepository;
+        this.maxCacheSize = Math.max(1, maxCacheSize);
     }
     
     /**
      * プレイヤーIDを取得または新規作成する
-     * 既存のプレイヤーが見つかった場合は名前を更新する
+     * 名前が前回記録したものから変わっている場合のみ名前を更新する
+     * 書き込みスレッドとインポートから同時に呼び出されることがあるため、
+     * 同じプレイヤーを他のスレッドが先に作成した場合は、作成されたプレイヤーを使う
      * 
      * @param uuid プレイヤーのUUID
      * @param name プレイヤー名
      * @return プレイヤーID
      */
     public int getOrCreatePlayerId(UUID uuid, String name) throws SQLException {
-        byte[] uuidBytes = AdvancementUtil.uuidToBytes(uuid);
-        
-        // まず既存のプレイヤーを検索
-        var selectSql = "SELECT id FROM player WHERE uuid = ?";
-        try (var selectStmt = databaseManager.getConnection().prepareStatement(selectSql)) {
-            selectStmt.setBytes(1, uuidBytes);
+        // キャッシュにあればデータベースにアクセスしない
+        var cached = cache.get(uuid);
+        if (cached == null) {
+            cached = findPlayer(uuid);
+        }
+
+        if (cached == null) {
+            // 新規プレイヤーを作成
+            try {
+                cached = new CachedPlayer(createPlayer(AdvancementUtil.uuidToBytes(uuid), name), name);
+            } catch (SQLException e) {
+                // UUIDの一意制約に違反した場合は、他のスレッドが作成したプレイヤーを読み直す
+                cached = findPlayer(uuid);
+                if (cached == null) {
+                    throw e;
+                }
+            }
+        }
+        if (!cached.name().equals(name)) {
+            // 名前が変わった時だけ更新
+            updatePlayerName(cached.id(), name);
+            cached = new CachedPlayer(cached.id(), name);
+        }
+
+        putCache(uuid, cached);
+        return cached.id();
+    }
+
+    /**
+     * プレイヤーをキャッシュに読み込む
+     * プレイヤーが存在しない場合は何もしない（作成は最初の実績達成時に行う）
+     *
+     * @param uuid プレイヤーのUUID
+     */
+    public void preloadPlayer(UUID uuid) {
+        if (cache.containsKey(uuid)) return;
+        try {
+            var found = findPlayer(uuid);
+            if (found != null) {
+                putCache(uuid, found);
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "プレイヤー情報の読み込みに失敗しました", e);
+        }
+    }
+
+    /**
+     * プレイヤーをキャッシュから削除する
+     *
+     * @param uuid プレイヤーのUUID
+     */
+    public void evictPlayer(UUID uuid) {
+        cache.remove(uuid);
+    }
+
+    /**
+     * 全てのプレイヤーのUUIDと名前を読み込む
+     * インポート時にプレイヤー名をまとめて解決するために使用する
+     *
+     * @return UUID → プレイヤー名
+     */
+    public Map<UUID, String> loadAllNames() throws SQLException {
+        var names = new HashMap<UUID, String>();
+        try (var conn = databaseManager.getConnection(); var pstmt = conn.prepareStatement("SELECT uuid, name FROM player")) {
+            try (var rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    names.put(AdvancementUtil.bytesToUuid(rs.getBytes("uuid")), rs.getString("name"));
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 名前からプレイヤーを検索する
+     * 同じ名前のプレイヤーが複数いる場合（名前の変更後に別のプレイヤーが使用した場合など）は、最後に記録されたプレイヤーを返す
+     *
+     * @param name プレイヤー名
+     * @return プレイヤー（存在しない場合はnull）
+     */
+    public @Nullable StoredPlayer findPlayerByName(String name) throws SQLException {
+        var selectSql = "SELECT uuid, name FROM player WHERE name = ? ORDER BY id DESC LIMIT 1";
+        try (var conn = databaseManager.getConnection(); var selectStmt = conn.prepareStatement(selectSql)) {
+            selectStmt.setString(1, name);
+            try (var rs = selectStmt.executeQuery()) {
+                if (rs.next()) {
+                    return new StoredPlayer(AdvancementUtil.bytesToUuid(rs.getBytes("uuid")), rs.getString("name"));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * データベースからプレイヤーを検索する
+     *
+     * @return プレイヤー情報（存在しない場合はnull）
+     */
+    private CachedPlayer findPlayer(UUID uuid) throws SQLException {
+        var selectSql = "SELECT id, name FROM player WHERE uuid = ?";
+        try (var conn = databaseManager.getConnection(); var selectStmt = conn.prepareStatement(selectSql)) {
+            selectStmt.setBytes(1, AdvancementUtil.uuidToBytes(uuid));
             try (var rs = selectStmt.executeQuery()) {
                 if (rs.next()) {
-                    // 既存プレイヤーの名前を更新
-                    var playerId = rs.getInt("id");
-                    updatePlayerName(playerId, name);
-                    return playerId;
+                    return new CachedPlayer(rs.getInt("id"), rs.getString("name"));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * キャッシュに追加する
+     * 最大件数を超えた場合は他のプレイヤーを順不同で削除する
+     */
+    private void putCache(UUID uuid, CachedPlayer player) {
+        cache.put(uuid, player);
+        if (cache.size() > maxCacheSize) {
+            var it = cache.keySet().iterator();
+            while (cache.size() > maxCacheSize && it.hasNext()) {
+                var key = it.next();
+                if (!key.equals(uuid)) {
+                    it.remove();
                 }
             }
         }
-        
-        // 新規プレイヤーを作成
-        return createPlayer(uuidBytes, name);
     }
     
     /**
@@ -54,7 +181,7 @@ public class PlayerRepository {
      */
     private void updatePlayerName(int playerId, String name) throws SQLException {
         var updateSql = "UPDATE player SET name = ? WHERE id = ?";
-        try (var updateStmt = databaseManager.getConnection().prepareStatement(updateSql)) {
+        try (var conn = databaseManager.getConnection(); var updateStmt = conn.prepareStatement(updateSql)) {
             updateStmt.setString(1, name);
             updateStmt.setInt(2, playerId);
             updateStmt.executeUpdate();
@@ -63,22 +190,55 @@ public class PlayerRepository {
     
     /**
      * 新しいプレイヤーレコードを作成する
+     * 総プレイヤー数のカウンターも同じトランザクションで加算する
      */
     private int createPlayer(byte[] uuidBytes, String name) throws SQLException {
         var insertSql = "INSERT INTO player (uuid, name) VALUES (?, ?)";
-        try (var insertStmt = databaseManager.getConnection().prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
-            insertStmt.setBytes(1, uuidBytes);
-            insertStmt.setString(2, name);
-            insertStmt.executeUpdate();
-            
-            // 生成されたIDを取得
-            try (var rs = insertStmt.getGeneratedKeys()) {
-                if (rs.next()) {
-                    return rs.getInt(1);
+        // カウンターの再構築と重ならないよう、メモリに反映するまでロックする
+        var updateLock = counterRepository.updateLock();
+        updateLock.lock();
+        try (var conn = databaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            int playerId;
+            try (var insertStmt = conn.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
+                insertStmt.setBytes(1, uuidBytes);
+                insertStmt.setString(2, name);
+                insertStmt.executeUpdate();
+
+                // 生成されたIDを取得
+                try (var rs = insertStmt.getGeneratedKeys()) {
+                    if (!rs.next()) {
+                        throw new SQLException("Failed to create player record");
+                    }
+                    playerId = rs.getInt(1);
                 }
             }
+            counterRepository.addPlayers(conn, 1);
+            // 失敗した場合は接続の返却時にロールバックされる
+            conn.commit();
+
+            counterRepository.applyPlayers(1);
+            return playerId;
+        } finally {
+            updateLock.unlock();
         }
-        
-        throw new SQLException("Failed to create player record");
+    }
+
+    /**
+     * キャッシュされたプレイヤー情報
+     *
+     * @param id   プレイヤーID
+     * @param name 最後に記録したプレイヤー名
+     */
+    private record CachedPlayer(int id, String name) {
+    }
+
+    /**
+     * 記録済みのプレイヤー
+     *
+     * @param uuid プレイヤーのUUID
+     * @param name 最後に記録したプレイヤー名
+     */
+    public record StoredPlayer(UUID uuid, String name) {
     }
 }
\ No newline at end of file
@@ -1,17 +1,29 @@
 package com.kamesuta.advrank.database;
 
 import com.kamesuta.advrank.data.RankingProgressData;
+import com.kamesuta.advrank.data.RankingSnapshot;
+import com.kamesuta.advrank.ranking.RankingCache;
+import com.kamesuta.advrank.ranking.RankingIndex;
 import com.kamesuta.advrank.ranking.RankingService;
 
-import org.bukkit.advancement.Advancement;
-import org.bukkit.entity.Player;
+import org.bukkit.Bukkit;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerAdvancementDoneEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.jetbrains.annotations.Nullable;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.Level;
@@ -30,37 +42,156 @@ public class RankingManager implements AutoCloseable, Listener {
     
     // 各コンポーネントのインスタンス
     private final DatabaseManager databaseManager;
+    private final CounterRepository counterRepository;
+    private final CompletionRankRepairer rankRepairer;
     private final PlayerRepository playerRepository;
     private final AdvancementRepository advancementRepository;
+    private final @Nullable RankingIndex rankingIndex;
+    private final RankingCache rankingCache;
     private final RankingService rankingService;
+    private final AdvancementWriteQueue writeQueue;
+    private final ImportManifestRepository importManifestRepository;
 
     /**
      * コンストラクタ
      * 各コンポーネントを初期化する
      */
     public RankingManager() throws SQLException {
+        var config = app.getConfig();
         this.databaseManager = new DatabaseManager();
-        this.playerRepository = new PlayerRepository(databaseManager);
-        this.advancementRepository = new AdvancementRepository(databaseManager);
-        this.rankingService = new RankingService(databaseManager);
+        this.counterRepository = new CounterRepository(databaseManager);
+        this.rankRepairer = new CompletionRankRepairer(databaseManager);
+        this.playerRepository = new PlayerRepository(databaseManager, counterRepository, config.getInt("cache.maxPlayers", 10000));
+        this.advancementRepository = new AdvancementRepository(databaseManager, counterRepository, rankRepairer);
+        this.rankingIndex = config.getBoolean("ranking.inMemoryIndex", true) ? new RankingIndex(databaseManager) : null;
+        this.rankingCache = new RankingCache(
+                config.getLong("ranking.cache.ttlMillis", 5000),
+                config.getLong("ranking.cache.staleMillis", 30000),
+                config.getLong("ranking.cache.maxWeight", 50000));
+        this.rankingService = new RankingService(databaseManager, advancementRepository, counterRepository, rankRepairer, rankingIndex, rankingCache);
+        this.importManifestRepository = new ImportManifestRepository(databaseManager);
+
+        this.writeQueue = new AdvancementWriteQueue(playerRepository, advancementRepository,
+                config.getInt("writer.queueCapacity", 10000),
+                config.getInt("writer.overflowCapacity", 50000),
+                config.getInt("writer.batchSize", 500),
+                config.getLong("writer.lingerMillis", 50));
+
+        // 前回の起動中に終わらなかった順位の振り直しを再開する
+        Bukkit.getScheduler().runTaskAsynchronously(app, rankRepairer::resumePending);
+
+        if (rankingIndex != null) {
+            // 表示キャッシュの再読み込みより先にインデックスを更新するため、最初に登録する
+            writeQueue.addFlushListener(this::addToIndex);
+            // 読み込みが終わるまではSQLでランキングを取得する
+            Bukkit.getScheduler().runTaskAsynchronously(app, rankingIndex::load);
+        }
+        // 達成が記録された実績と、順位を振り直した実績のキャッシュを無効化する
+        writeQueue.addFlushListener(written -> written.forEach(record -> rankingCache.invalidate(record.advancementId())));
+        rankRepairer.addRepairListener(rankingCache::invalidate);
+    }
+
+    /**
+     * 書き込んだ記録をランキングインデックスに反映する
+     * インポートの過去の日時の記録も1回で併合できるよう、実績ごとにまとめて追加する
+     */
+    private void addToIndex(List<AdvancementWriteQueue.WrittenRecord> written) {
+        if (rankingIndex == null) return;
+        var byAdvancement = new HashMap<Integer, List<AdvancementWriteQueue.WrittenRecord>>();
+        for (var record : written) {
+            rankingIndex.registerPlayer(record.playerId(), record.uuid(), record.name());
+            byAdvancement.computeIfAbsent(record.advancementId(), k -> new ArrayList<>()).add(record);
+        }
+        for (var entry : byAdvancement.entrySet()) {
+            var records = entry.getValue();
+            var playerIds = new int[records.size()];
+            var timestamps = new long[records.size()];
+            for (var i = 0; i < records.size(); i++) {
+                playerIds[i] = records.get(i).playerId();
+                timestamps[i] = records.get(i).timestamp().getTime();
+            }
+            rankingIndex.addAll(entry.getKey(), playerIds, timestamps);
+        }
     }
 
     @Override
     public void close() throws SQLException {
+        // 書き込み待ちの記録を全て書き込んでから切断する
+        if (writeQueue != null) {
+            writeQueue.close();
+        }
         if (databaseManager != null) {
             databaseManager.close();
         }
     }
 
     /**
-     * データベースにpingを送信して接続を維持する
+     * 待機中のデータベース接続の生存確認を行う
      */
     public void pingDatabase() {
         databaseManager.pingDatabase();
     }
 
+    /**
+     * 接続プールの統計レポートを生成する
+     */
+    public String generatePoolReport() {
+        return databaseManager.generatePoolReport();
+    }
+
+    /**
+     * 書き込みキューの統計レポートを生成する
+     */
+    public String generateWriteQueueReport() {
+        return writeQueue.generateReport();
+    }
+
+    /**
+     * ランキングキャッシュの統計レポートを生成する
+     */
+    public String generateRankingCacheReport() {
+        return rankingCache.generateReport();
+    }
+
+    /**
+     * 実績達成記録の書き込み完了時のリスナーを追加する
+     * リスナーは書き込みスレッドから呼び出される
+     *
+     * @param listener 書き込んだ記録を受け取るリスナー
+     */
+    public void addFlushListener(Consumer<List<AdvancementWriteQueue.WrittenRecord>> listener) {
+        writeQueue.addFlushListener(listener);
+    }
+
+    /**
+     * 達成順位の振り直し完了時のリスナーを追加する
+     *
+     * @param listener 順位を振り直した実績IDを受け取るリスナー
+     */
+    public void addRankRepairListener(IntConsumer listener) {
+        rankRepairer.addRepairListener(listener);
+    }
+
+    /**
+     * ログイン時にプレイヤーIDをキャッシュに読み込む
+     */
+    @EventHandler
+    public void onJoin(PlayerJoinEvent event) {
+        var uuid = event.getPlayer().getUniqueId();
+        Bukkit.getScheduler().runTaskAsynchronously(app, () -> playerRepository.preloadPlayer(uuid));
+    }
+
+    /**
+     * ログアウト時にプレイヤーIDをキャッシュから削除する
+     */
+    @EventHandler
+    public void onQuit(PlayerQuitEvent event) {
+        playerRepository.evictPlayer(event.getPlayer().getUniqueId());
+    }
+
     /**
      * プレイヤーが実績を達成した時のイベントハンドラ
+     * 書き込みはキューに追加するだけで、実際の書き込みは書き込みスレッドで行う
      */
     @EventHandler
     public void onAdvancementDone(PlayerAdvancementDoneEvent event) {
@@ -69,10 +200,10 @@ public class RankingManager implements AutoCloseable, Listener {
             return;
         }
 
-        // 実績達成を記録
+        // 実績達成を書き込みキューに追加
         var key = event.getAdvancement().getKey().asString();
         var player = event.getPlayer();
-        recordAdvancementProgressData(player.getUniqueId(), player.getName(), key, null);
+        writeQueue.submit(player.getUniqueId(), player.getName(), key, null);
     }
 
     /**
@@ -85,20 +216,79 @@ public class RankingManager implements AutoCloseable, Listener {
      */
     public void recordAdvancementProgressData(UUID uuid, String name, String key, Timestamp timestamp) {
         try {
-            // リポジトリを使用してデータを記録
-            var playerId = playerRepository.getOrCreatePlayerId(uuid, name);
-            var advancementId = advancementRepository.getOrCreateAdvancementId(key);
-            advancementRepository.recordPlayerAdvancement(playerId, advancementId, timestamp);
+            writeQueue.writeNow(List.of(AdvancementWriteQueue.PendingRecord.of(uuid, name, key, timestamp)));
         } catch (SQLException e) {
             logger.log(Level.WARNING, "進捗の保存に失敗しました", e);
         }
     }
 
     /**
-     * 実績の進捗データを取得する
+     * 複数の実績達成記録をまとめて書き込む
+     * 書き込みキューを通さず、呼び出し元のスレッドで書き込む（インポート用）
+     *
+     * @param records 書き込む記録
+     * @return 書き込んだ件数
+     */
+    public int recordAdvancementProgressDataBatch(List<AdvancementWriteQueue.PendingRecord> records) throws SQLException {
+        return writeQueue.writeNow(records).size();
+    }
+
+    /**
+     * 達成者数と総プレイヤー数のカウンターをテーブルから数え直す
+     *
+     * @return 数え直した結果
+     */
+    public CounterRepository.RebuildResult rebuildCounters() throws SQLException {
+        return counterRepository.rebuild();
+    }
+
+    /**
+     * インポート済みファイルの記録を全て読み込む
+     */
+    public Map<String, ImportManifestRepository.ManifestEntry> loadImportManifest() throws SQLException {
+        return importManifestRepository.loadAll();
+    }
+
+    /**
+     * インポートしたファイルの記録を保存する
+     */
+    public void saveImportManifest(Collection<ImportManifestRepository.ManifestEntry> entries) throws SQLException {
+        importManifestRepository.saveAll(entries);
+    }
+
+    /**
+     * 記録済みの全てのプレイヤーのUUIDと名前を読み込む
+     */
+    public Map<UUID, String> loadAllPlayerNames() throws SQLException {
+        return playerRepository.loadAllNames();
+    }
+
+    /**
+     * 名前から記録済みのプレイヤーを検索する
+     */
+    public @Nullable PlayerRepository.StoredPlayer findPlayerByName(String name) throws SQLException {
+        return playerRepository.findPlayerByName(name);
+    }
+
+    /**
+     * プレイヤーが達成済みの実績キーを取得する
+     */
+    public Set<String> getCompletedAdvancementKeys(UUID uuid) throws SQLException {
+        return rankingService.getCompletedAdvancementKeys(uuid);
+    }
+
+    /**
+     * 複数の実績の見るプレイヤーによらないランキングデータをまとめて取得する
+     */
+    public Map<String, RankingSnapshot> getRankingSnapshots(Collection<String> advancementKeys, int limitTop, int limitBottom) throws SQLException {
+        return rankingService.getRankingSnapshots(advancementKeys, limitTop, limitBottom);
+    }
+
+    /**
+     * 複数の実績のプレイヤーの進捗情報をまとめて取得する
      */
-    public @Nullable RankingProgressData getAdvancementProgressData(Player player, Advancement advancement, int limitTop, int limitBottom) {
-        return rankingService.getAdvancementProgressData(player, advancement, limitTop, limitBottom);
+    public Map<String, RankingProgressData.PlayerProgress> getPlayerProgressBatch(UUID uuid, Collection<String> advancementKeys) throws SQLException {
+        return rankingService.getPlayerProgressBatch(uuid, advancementKeys);
     }
     
     /**
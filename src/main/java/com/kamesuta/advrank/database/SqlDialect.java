@@ -0,0 +1,109 @@
+package com.kamesuta.advrank.database;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * データベースごとに異なるSQLと接続設定
+ * リポジトリのSQLは共通の構文で書き、データベースによって書き方が異なる部分（重複の無視・更新、行ロック、
+ * 順位の振り直しなど）だけをここから取得する
+ * 使用するデータベースはconfig.ymlのstorage.typeで選択する
+ */
+public interface SqlDialect {
+    /**
+     * config.ymlの設定から方言を作成する
+     *
+     * @param type storage.typeの値
+     * @return 方言
+     */
+    static SqlDialect of(String type) {
+        return switch (type.toLowerCase()) {
+            case "mysql" -> new MySqlDialect();
+            case "sqlite" -> new SqliteDialect();
+            default -> throw new IllegalArgumentException("不明なストレージの種類: " + type);
+        };
+    }
+
+    /**
+     * 方言の名前（マイグレーションのリソースのディレクトリ名にも使用する）
+     */
+    String name();
+
+    /**
+     * 接続プールを作成する
+     *
+     * @param config config.ymlのルート
+     * @return 接続プール
+     */
+    ConnectionPool createPool(ConfigurationSection config);
+
+    /**
+     * 同梱しているマイグレーションのファイル名（バージョン順）
+     * 新しいマイグレーションは末尾に追加し、適用済みのファイルは変更しないこと
+     */
+    List<String> migrations();
+
+    /**
+     * マイグレーション中に他のサーバーが同時にマイグレーションしないようロックする
+     *
+     * @param conn マイグレーションに使う接続
+     */
+    void acquireMigrationLock(Connection conn) throws SQLException;
+
+    /**
+     * マイグレーションのロックを解放する
+     *
+     * @param conn マイグレーションに使う接続
+     */
+    void releaseMigrationLock(Connection conn) throws SQLException;
+
+    /**
+     * 主キーや一意キーが重複する行を無視して追加するINSERT文の先頭
+     *
+     * @param table テーブル名
+     * @return 「INSERT IGNORE INTO table」など
+     */
+    String insertIgnoreInto(String table);
+
+    /**
+     * 主キーが重複した場合に既存の行を更新するINSERT文の末尾
+     * 代入式の中で追加しようとした値は{@link #inserted(String)}で参照する
+     *
+     * @param keyColumns  主キーの列（カンマ区切り）
+     * @param assignments 更新する代入式（カンマ区切り）
+     * @return 「ON DUPLICATE KEY UPDATE ...」など
+     */
+    String onConflictUpdate(String keyColumns, String assignments);
+
+    /**
+     * {@link #onConflictUpdate(String, String)}の代入式の中で、追加しようとした値を参照する式
+     *
+     * @param column 列名
+     * @return 「VALUES(column)」など
+     */
+    String inserted(String column);
+
+    /**
+     * SELECT文で読んだ行を、トランザクションが終わるまで他の書き込みからロックする句
+     * 書き込みが1つの接続に直列化されるデータベースでは空文字
+     */
+    String forUpdate();
+
+    /**
+     * 2列の組み合わせが指定した組み合わせのいずれかに一致する条件
+     *
+     * @param columns 2列（例: 「player_id, advancement_id」）
+     * @param count   組み合わせの数（プレースホルダーは列数×組み合わせ数）
+     * @return 「(a, b) IN ((?, ?), ...)」など
+     */
+    String pairsIn(String columns, int count);
+
+    /**
+     * 1つの実績の達成順位を振り直すUPDATE文
+     * パラメーターは実績IDを2回
+     */
+    String repairRanksSql();
+}
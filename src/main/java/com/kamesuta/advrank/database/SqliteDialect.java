@@ -0,0 +1,96 @@
+package com.kamesuta.advrank.database;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.File;
+import java.sql.Connection;
+import java.util.Collections;
+import java.util.List;
+
+import static com.kamesuta.advrank.AdvRankingPlugin.app;
+
+/**
+ * SQLite用の方言
+ * プラグインフォルダ内のファイルに保存するため、MySQLサーバーを用意せずに使用できる（テストサーバー向け）
+ * SQLiteは同時に1つの接続しか書き込めないため、接続は1つだけ使用し、行ロックは行わない
+ */
+public class SqliteDialect implements SqlDialect {
+    @Override
+    public String name() {
+        return "sqlite";
+    }
+
+    @Override
+    public ConnectionPool createPool(ConfigurationSection config) {
+        var file = new File(app.getDataFolder(), config.getString("storage.sqlite.file", "ranking.db"));
+        // WALにすると読み込みと書き込みが互いを待たない
+        var url = "jdbc:sqlite:" + file.getAbsolutePath() + "?journal_mode=WAL&synchronous=NORMAL&foreign_keys=true&busy_timeout=5000";
+
+        var connectionTimeoutMillis = config.getLong("storage.sqlite.connectionTimeoutMillis", 5000);
+        var validationTimeoutSeconds = config.getInt("storage.sqlite.validationTimeoutSeconds", 3);
+
+        return new ConnectionPool(url, null, null, 1, connectionTimeoutMillis, validationTimeoutSeconds);
+    }
+
+    @Override
+    public List<String> migrations() {
+        return List.of(
+                "V1__baseline.sql",
+                // V1でMySQLのV5までと同じ構成を作成するため、以降はMySQLと同じバージョン番号を使う
+                "V6__player_name_index.sql",
+                "V7__completion_rank_index.sql"
+        );
+    }
+
+    @Override
+    public void acquireMigrationLock(Connection conn) {
+        // 接続は1つだけのため不要
+    }
+
+    @Override
+    public void releaseMigrationLock(Connection conn) {
+        // 接続は1つだけのため不要
+    }
+
+    @Override
+    public String insertIgnoreInto(String table) {
+        return "INSERT OR IGNORE INTO " + table;
+    }
+
+    @Override
+    public String onConflictUpdate(String keyColumns, String assignments) {
+        return " ON CONFLICT (" + keyColumns + ") DO UPDATE SET " + assignments;
+    }
+
+    @Override
+    public String inserted(String column) {
+        return "excluded." + column;
+    }
+
+    @Override
+    public String forUpdate() {
+        // 書き込みは1つの接続に直列化されるため不要
+        return "";
+    }
+
+    @Override
+    public String pairsIn(String columns, int count) {
+        // SQLiteでは行値のINの右辺にVALUESが必要
+        return "(" + columns + ") IN (VALUES " + String.join(", ", Collections.nCopies(count, "(?, ?)")) + ")";
+    }
+
+    @Override
+    public String repairRanksSql() {
+        return """
+                UPDATE player_advancement AS pa
+                 SET completion_rank = ranked.completion_rank
+                 FROM (
+                     SELECT player_id, RANK() OVER (ORDER BY timestamp ASC) AS completion_rank
+                      FROM player_advancement
+                      WHERE advancement_id = ?
+                 ) AS ranked
+                 WHERE pa.advancement_id = ? AND pa.player_id = ranked.player_id
+                  AND pa.completion_rank IS NOT ranked.completion_rank;
+                """;
+    }
+}
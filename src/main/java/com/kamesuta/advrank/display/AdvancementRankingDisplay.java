@@ -16,12 +16,21 @@ import net.minecraft.advancements.AdvancementHolder;
 import net.minecraft.advancements.DisplayInfo;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.MutableComponent;
+import net.minecraft.network.protocol.game.ClientboundUpdateAdvancementsPacket;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.ServerAdvancementManager;
+import org.bukkit.Bukkit;
+import org.bukkit.craftbukkit.CraftServer;
 import org.bukkit.entity.Player;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
 
 import static com.kamesuta.advrank.AdvRankingPlugin.app;
 
@@ -29,97 +38,194 @@ import static com.kamesuta.advrank.AdvRankingPlugin.app;
  * ランキング表示クラス
  * プレイヤーが進捗画面を開いた際に、実績にランキング情報を動的に追加する
  * ProtocolLibを使用してパケットを書き換えることで実現している
+ * パケット送信スレッドを止めないよう、ランキングデータは{@link RankingDisplayCache}から取得する
+ * 見るプレイヤーによらない装飾は{@link DecoratedAdvancementCache}で共有し、同じ進捗を見るプレイヤーの人数分組み立て直さない
  */
 public class AdvancementRankingDisplay {
 
+    private static final Logger logger = Logger.getLogger(AdvancementRankingDisplay.class.getName());
+
+    /**
+     * ランキングデータのキャッシュ
+     */
+    public final RankingDisplayCache cache = new RankingDisplayCache();
+    /**
+     * 見るプレイヤーによらない装飾済み進捗のキャッシュ
+     */
+    private final DecoratedAdvancementCache decoratedCache = new DecoratedAdvancementCache();
+
+    /**
+     * パケット1つあたりの装飾処理時間の目安（ナノ秒）
+     */
+    private final long packetBudgetNanos = TimeUnit.MILLISECONDS.toNanos(app.getConfig().getLong("display.packetBudgetMillis", 5));
+    /**
+     * 装飾したパケット数
+     */
+    private final AtomicLong packetCount = new AtomicLong();
+    /**
+     * 装飾処理時間の合計（ナノ秒）
+     */
+    private final AtomicLong totalNanos = new AtomicLong();
+    /**
+     * 装飾処理時間の最大値（ナノ秒）
+     */
+    private final AtomicLong maxNanos = new AtomicLong();
+    /**
+     * 目安時間を超えたパケット数
+     */
+    private final AtomicLong overBudgetCount = new AtomicLong();
+
     /**
      * ランキング表示パケットリスナーを登録する
      * 進捗画面にランキング情報とIDを動的に追加する
      */
     public void register() {
+        // キャッシュのイベントリスナーを登録
+        app.getServer().getPluginManager().registerEvents(cache, app);
+        app.getServer().getPluginManager().registerEvents(decoratedCache, app);
+        // 実績達成がデータベースに書き込まれたらその実績のランキングを読み直す
+        app.rankingManager.addFlushListener(written -> written.forEach(record -> cache.invalidate(record.key(), record.uuid(), record.timestamp())));
+        // 保存した達成順位が振り直されたら全員の順位を読み直す
+        app.rankingManager.addRankRepairListener(cache::invalidateRanks);
+
         app.protocolManager.addPacketListener(new PacketAdapter(app, PacketType.Play.Server.ADVANCEMENTS) {
             @Override
             public void onPacketSending(PacketEvent event) {
-                Player viewer = event.getPlayer();
-
-                // プレイヤーデータを取得して表示設定を確認
-                PlayerData playerData = app.playerDataManager.getPlayerData(viewer);
-
-                // タイトルサフィックス（他プレイヤーの進捗を見ている場合の表示）を生成
-                String titleSuffix = AdvancementUtil.formatLength(playerData.targetQueue != null ? " (" + playerData.targetQueue.getName() + "の進捗)" : "", 35);
-
-                // 進捗パケットデータを取得・解析
-                PacketContainer packetContainer = event.getPacket();
-                StructureModifier<List<AdvancementHolder>> added = packetContainer.getLists(Converters.passthrough(AdvancementHolder.class));
-
-                // 追加される進捗を取得
-                List<AdvancementHolder> addedList = new ArrayList<>(added.read(0));
-
-                // 各進捗にランキング情報を追加
-                for (ListIterator<AdvancementHolder> it = addedList.listIterator(); it.hasNext(); ) {
-                    AdvancementHolder holder = it.next();
-
-                    // 進捗にランキングと誰の進捗かを追加する
-                    Advancement advancement = holder.value();
-                    Optional<DisplayInfo> displayInfo = advancement.display().map((display) -> {
-                        // この実績のランキングデータを取得（上位3人、下位3人）
-                        RankingProgressData ranking = app.rankingManager.getAdvancementProgressData(viewer, holder.toBukkit(), 3, 3);
-                        if (ranking == null) return display; // ランキングが取得できなかったらそのまま返す
-
-                        // 進捗タイトルを構築（他プレイヤーの進捗を見ている場合はその旨を表示）
-                        Component title = Component.empty().append(display.getTitle()).append(Component.literal(titleSuffix).withStyle(ChatFormatting.GRAY));
-
-                        // 進捗の説明文を構築（元の説明にランキング情報を追加）
-                        MutableComponent description = Component.empty()
-                                .append(display.getDescription())
-                                .append("\n\n");
-                        // ランキング進捗情報を追加（達成人数、順位など）
-                        ranking.appendProgressDescription(description);
-
-                        // 上位プレイヤーの情報を表示に追加
-                        if (!ranking.top().isEmpty()) {
-                            description.append("\n\n")
-                                    .append(Component.literal("トップ3").withStyle(ChatFormatting.YELLOW));
-                            ranking.appendRanking(description, ranking.top());
-                            
-                            // 全ランキング表示コマンドのリンクを生成
-                            String advancementKey = holder.id().toString();
-                            int advancementId = app.rankingManager.getAdvancementIdByKey(advancementKey);
-                            if (advancementId != -1) {
-                                description.append("\n")
-                                        .append(Component.literal("/adv_rank " + advancementId).withStyle(ChatFormatting.BLUE))
-                                        .append(Component.literal(" で全てのランキングを見る").withStyle(ChatFormatting.GRAY));
-                            }
-                        }
-                        // 下位プレイヤーの情報も表示（達成者が6人以上の場合）
-                        if (!ranking.bottom().isEmpty() && ranking.done() >= 6) {
-                            description.append("\n\n")
-                                    .append(Component.literal("直近達成3位").withStyle(ChatFormatting.BLUE));
-                            ranking.appendRanking(description, ranking.bottom());
-                        }
-
-                        // ID表示モードの場合、実績IDを表示
-                        if (playerData.showId) {
-                            description.append("\n\n")
-                                    .append(Component.literal("ID: ").withStyle(ChatFormatting.GRAY))
-                                    .append(Component.literal(holder.id().toString()).withStyle(ChatFormatting.GOLD));
-                        }
-
-                        // ランキング情報を追加した新しいDisplayInfoオブジェクトを作成
-                        DisplayInfo copyDisplay = new DisplayInfo(display.getIcon(), title, description, display.getBackground(), display.getType(), display.shouldShowToast(), display.shouldAnnounceChat(), display.isHidden());
-                        // 元の進捗の位置情報を保持
-                        copyDisplay.setLocation(display.getX(), display.getY());
-                        return copyDisplay;
-                    });
-                    Advancement copyAdvancement = new Advancement(advancement.parent(), displayInfo, advancement.rewards(), advancement.criteria(), advancement.requirements(), advancement.sendsTelemetryEvent(), advancement.name());
-
-                    // 修正された進捗情報でパケットを更新
-                    it.set(new AdvancementHolder(holder.id(), copyAdvancement));
-                }
-
-                // 修正済みの進捗リストをパケットに書き戻し
-                added.write(0, addedList);
+                long start = System.nanoTime();
+                decoratePacket(event);
+                recordTiming(System.nanoTime() - start);
             }
         });
     }
+
+    /**
+     * 進捗パケットにランキング情報を追加する
+     * データベースにはアクセスせず、キャッシュ済みのデータのみを使用する
+     *
+     * @param event パケットイベント
+     */
+    private void decoratePacket(PacketEvent event) {
+        Player viewer = event.getPlayer();
+
+        // プレイヤーデータを取得して表示設定を確認
+        PlayerData playerData = app.playerDataManager.getPlayerData(viewer);
+
+        // タイトルサフィックス（他プレイヤーの進捗を見ている場合の表示）を生成
+        // パケット内の全ての進捗で同じため、1回だけ作成する
+        String titleSuffix = AdvancementUtil.formatLength(playerData.targetQueue != null ? " (" + playerData.targetQueue.name() + "の進捗)" : "", 35);
+        Component titleSuffixComponent = Component.literal(titleSuffix).withStyle(ChatFormatting.GRAY);
+
+        // 進捗パケットデータを取得・解析
+        PacketContainer packetContainer = event.getPacket();
+        // クライアントが持っている進捗を記録する（ランキングの差分送信に使う）
+        app.viewer.liveUpdater.onPacketSending(viewer, (ClientboundUpdateAdvancementsPacket) packetContainer.getHandle());
+        StructureModifier<List<AdvancementHolder>> added = packetContainer.getLists(Converters.passthrough(AdvancementHolder.class));
+
+        // 追加される進捗を取得
+        List<AdvancementHolder> addedList = new ArrayList<>(added.read(0));
+
+        // 遅延装飾が有効な場合は、開いたことのあるタブの進捗だけを装飾する
+        Set<ResourceLocation> decoratedTabs = app.viewer.liveUpdater.getDecoratedTabs(viewer);
+        ServerAdvancementManager advancementManager = ((CraftServer) Bukkit.getServer()).getServer().getAdvancements();
+
+        // 各進捗にランキング情報を追加
+        for (ListIterator<AdvancementHolder> it = addedList.listIterator(); it.hasNext(); ) {
+            AdvancementHolder holder = it.next();
+            if (decoratedTabs != null && !decoratedTabs.contains(LiveRankingUpdater.rootOf(advancementManager, holder.id()))) continue;
+
+            // 表示されない進捗はそのまま送る
+            if (holder.value().display().isEmpty()) continue;
+
+            // この実績のランキングデータをキャッシュから取得（上位3人、下位3人）
+            RankingDisplayCache.Entry entry = cache.get(viewer, holder.id().toString());
+            if (entry == null || entry.ranking() == null || entry.fragments() == null) continue; // ランキングが取得できなかったらそのまま送る
+
+            // 修正された進捗情報でパケットを更新
+            if (entry.ranking().progress() != null) {
+                // 自分の順位と取得日時を含むため、見るプレイヤーごとに装飾する
+                it.set(decorate(holder, entry, titleSuffixComponent, playerData.showId));
+            } else {
+                // 未達成の場合は見るプレイヤーによらないため、装飾した進捗を共有する
+                DecoratedAdvancementCache.Key key = new DecoratedAdvancementCache.Key(holder.id(), entry.fragments(), titleSuffix, playerData.showId);
+                it.set(decoratedCache.get(key, () -> decorate(holder, entry, titleSuffixComponent, playerData.showId)));
+            }
+        }
+
+        // 修正済みの進捗リストをパケットに書き戻し
+        added.write(0, addedList);
+    }
+
+    /**
+     * 進捗にランキングと誰の進捗かを追加する
+     *
+     * @param holder               元の進捗
+     * @param entry                ランキングデータ
+     * @param titleSuffixComponent タイトルの後ろに付ける誰の進捗か
+     * @param showId               実績IDを表示するか
+     * @return 装飾した進捗
+     */
+    private static AdvancementHolder decorate(AdvancementHolder holder, RankingDisplayCache.Entry entry, Component titleSuffixComponent, boolean showId) {
+        Advancement advancement = holder.value();
+        RankingProgressData ranking = entry.ranking();
+        Optional<DisplayInfo> displayInfo = advancement.display().map((display) -> {
+            // 進捗タイトルを構築（他プレイヤーの進捗を見ている場合はその旨を表示）
+            Component title = Component.empty().append(display.getTitle()).append(titleSuffixComponent);
+
+            // 進捗の説明文を構築（元の説明にランキング情報を追加）
+            MutableComponent description = Component.empty()
+                    .append(display.getDescription())
+                    .append("\n\n");
+            // ランキング進捗情報を追加（達成人数、順位など）
+            ranking.appendProgressDescription(description);
+
+            // 上位・下位プレイヤーとリンクは組み立て済みの部品を使う（自分の行の強調だけ差し替える）
+            entry.fragments().appendTo(description, ranking.progress());
+
+            // ID表示モードの場合、実績IDを表示
+            if (showId) {
+                description.append("\n\n")
+                        .append(Component.literal("ID: ").withStyle(ChatFormatting.GRAY))
+                        .append(Component.literal(holder.id().toString()).withStyle(ChatFormatting.GOLD));
+            }
+
+            // ランキング情報を追加した新しいDisplayInfoオブジェクトを作成
+            DisplayInfo copyDisplay = new DisplayInfo(display.getIcon(), title, description, display.getBackground(), display.getType(), display.shouldShowToast(), display.shouldAnnounceChat(), display.isHidden());
+            // 元の進捗の位置情報を保持
+            copyDisplay.setLocation(display.getX(), display.getY());
+            return copyDisplay;
+        });
+        Advancement copyAdvancement = new Advancement(advancement.parent(), displayInfo, advancement.rewards(), advancement.criteria(), advancement.requirements(), advancement.sendsTelemetryEvent(), advancement.name());
+        return new AdvancementHolder(holder.id(), copyAdvancement);
+    }
+
+    /**
+     * 装飾処理時間を記録する
+     * 目安時間を超えた場合は警告を出力する
+     *
+     * @param elapsedNanos 処理時間（ナノ秒）
+     */
+    private void recordTiming(long elapsedNanos) {
+        packetCount.incrementAndGet();
+        totalNanos.addAndGet(elapsedNanos);
+        maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+        if (elapsedNanos > packetBudgetNanos) {
+            overBudgetCount.incrementAndGet();
+            logger.warning(String.format("進捗パケットの装飾に%.2fmsかかりました (目安: %dms)", elapsedNanos / 1_000_000.0, TimeUnit.NANOSECONDS.toMillis(packetBudgetNanos)));
+        }
+    }
+
+    /**
+     * 装飾処理時間の統計レポートを生成する
+     *
+     * @return フォーマットされた統計レポート
+     */
+    public String generateTimingReport() {
+        long count = packetCount.get();
+        double average = count > 0 ? totalNanos.get() / (double) count / 1_000_000.0 : 0;
+        return """
+            §a装飾したパケット数: §f%d件
+            §a平均処理時間: §f%.3fms §a最大処理時間: §f%.3fms
+            §e目安時間(%dms)超過: §f%d件
+            %s""".formatted(count, average, maxNanos.get() / 1_000_000.0, TimeUnit.NANOSECONDS.toMillis(packetBudgetNanos), overBudgetCount.get(), decoratedCache.generateReport());
+    }
 }
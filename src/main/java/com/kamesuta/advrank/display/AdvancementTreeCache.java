@@ -0,0 +1,268 @@
+package com.kamesuta.advrank.display;
+
+import com.destroystokyo.paper.event.player.PlayerAdvancementCriterionGrantEvent;
+import io.papermc.paper.event.server.ServerResourcesReloadedEvent;
+import net.minecraft.advancements.AdvancementHolder;
+import net.minecraft.advancements.AdvancementNode;
+import net.minecraft.advancements.AdvancementProgress;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.PlayerAdvancements;
+import net.minecraft.server.ServerAdvancementManager;
+import net.minecraft.server.advancements.AdvancementVisibilityEvaluator;
+import org.bukkit.Bukkit;
+import org.bukkit.craftbukkit.CraftServer;
+import org.bukkit.craftbukkit.entity.CraftPlayer;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerAdvancementDoneEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.kamesuta.advrank.AdvRankingPlugin.app;
+
+/**
+ * 見られるプレイヤーごとの、表示する進捗と進捗状況のキャッシュ
+ * 表示する進捗は全ての進捗の達成状況から求めるため、/adv・/adv_id・画面を閉じるたびに求め直さないよう保持しておく
+ * 同じプレイヤーを大勢が見る場合も、求めるのは見られるプレイヤーの進捗が進むたびに1回だけになる
+ * 見られるプレイヤーの進捗が進んだ場合と、データパックを再読み込みした場合に破棄する
+ * コマンドで進捗を取り消した場合は通知されないため、次に進捗が進むかログインし直すまで反映されない
+ * <p>
+ * オフラインのプレイヤーは、データベースの達成記録から進捗状況を作成する（プレイヤーデータのファイルは読まない）
+ * データベースには達成したかどうかしか記録されていないため、達成済みの進捗は全ての条件を満たしたものとし、
+ * 未達成の進捗は何も満たしていないものとして表示する
+ * 最近見たオフラインのプレイヤーだけを一定数保持し、新しい達成記録が書き込まれたら破棄する
+ * 取得はメインスレッドから行うこと
+ */
+public class AdvancementTreeCache implements Listener {
+    private static final Logger logger = Logger.getLogger(AdvancementTreeCache.class.getName());
+
+    /**
+     * プレイヤーのUUID → 表示する進捗と進捗状況
+     */
+    private final Map<UUID, TargetTree> trees = new ConcurrentHashMap<>();
+    /**
+     * オフラインのプレイヤーのUUID → 表示する進捗と進捗状況（最近見た順）
+     */
+    private final Map<UUID, TargetTree> offlineTrees;
+    /**
+     * 読み込み中のオフラインのプレイヤーのUUID → 読み込みの世代
+     * 読み込み中に破棄された場合は世代が消えるため、読み込んだ古い進捗をキャッシュしない
+     */
+    private final Map<UUID, Object> offlineGenerations = new ConcurrentHashMap<>();
+
+    public AdvancementTreeCache() {
+        int maxOfflineTargets = Math.max(1, app.getConfig().getInt("cache.maxOfflineTargets", 20));
+        this.offlineTrees = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, TargetTree> eldest) {
+                return size() > maxOfflineTargets;
+            }
+        });
+    }
+
+    /**
+     * 見られるプレイヤーの表示する進捗と進捗状況を取得する
+     *
+     * @param target 見られるプレイヤー
+     * @return 表示する進捗と進捗状況
+     */
+    public TargetTree get(CraftPlayer target) {
+        TargetTree tree = trees.get(target.getUniqueId());
+        if (tree == null) {
+            tree = build(target);
+            trees.put(target.getUniqueId(), tree);
+        }
+        return tree;
+    }
+
+    /**
+     * 読み込み済みのオフラインのプレイヤーの表示する進捗と進捗状況を取得する
+     *
+     * @param uuid プレイヤーのUUID
+     * @return 表示する進捗と進捗状況（読み込んでいない場合はnull）
+     */
+    public @Nullable TargetTree getOffline(UUID uuid) {
+        return offlineTrees.get(uuid);
+    }
+
+    /**
+     * オフラインのプレイヤーの表示する進捗と進捗状況を読み込む
+     * 読み込み済みの場合はそのまま、そうでなければデータベースから非同期で読み込み、メインスレッドで受け取る
+     *
+     * @param uuid     プレイヤーのUUID
+     * @param callback 読み込んだ進捗を受け取る処理（読み込みに失敗した場合は呼ばれない）
+     */
+    public void loadOffline(UUID uuid, Consumer<TargetTree> callback) {
+        TargetTree cached = offlineTrees.get(uuid);
+        if (cached != null) {
+            callback.accept(cached);
+            return;
+        }
+
+        // クエリの前に世代を記録する
+        Object generation = new Object();
+        offlineGenerations.put(uuid, generation);
+        Bukkit.getScheduler().runTaskAsynchronously(app, () -> {
+            Set<String> completed;
+            try {
+                // 1回のクエリで達成済みの実績を取得する
+                completed = app.rankingManager.getCompletedAdvancementKeys(uuid);
+            } catch (SQLException e) {
+                logger.log(Level.WARNING, "オフラインのプレイヤーの進捗の読み込みに失敗しました", e);
+                offlineGenerations.remove(uuid, generation);
+                return;
+            }
+            Bukkit.getScheduler().runTask(app, () -> {
+                TargetTree tree = build(holder -> {
+                    AdvancementProgress progress = new AdvancementProgress();
+                    progress.update(holder.value().requirements());
+                    if (completed.contains(holder.id().toString())) {
+                        for (String criterion : holder.value().requirements().names()) {
+                            progress.grantProgress(criterion);
+                        }
+                    }
+                    return progress;
+                });
+                // 読み込み中に新しい達成記録が書き込まれた場合は、古い進捗なのでキャッシュしない
+                if (offlineGenerations.remove(uuid, generation)) {
+                    offlineTrees.put(uuid, tree);
+                }
+                callback.accept(tree);
+            });
+        });
+    }
+
+    /**
+     * オフラインのプレイヤーのキャッシュを破棄する
+     * 達成記録の書き込みスレッドからも呼び出される
+     *
+     * @param uuid プレイヤーのUUID
+     */
+    public void invalidateOffline(UUID uuid) {
+        offlineGenerations.remove(uuid);
+        offlineTrees.remove(uuid);
+    }
+
+    /**
+     * オンラインのプレイヤーの表示する進捗と進捗状況を求める
+     */
+    private TargetTree build(CraftPlayer target) {
+        PlayerAdvancements playerAdvancements = target.getHandle().getAdvancements();
+        // 進捗状況のオブジェクトは達成に合わせて更新されるため、そのまま保持できる
+        return build(playerAdvancements::getOrStartProgress);
+    }
+
+    /**
+     * 表示する進捗と進捗状況を求める
+     *
+     * @param progressOf 進捗 → 進捗状況
+     */
+    private TargetTree build(Function<AdvancementHolder, AdvancementProgress> progressOf) {
+        ServerAdvancementManager advancementManager = ((CraftServer) Bukkit.getServer()).getServer().getAdvancements();
+
+        // 全ての進捗の進捗状況
+        Map<ResourceLocation, AdvancementProgress> progress = new HashMap<>();
+        for (AdvancementHolder advancementHolder : advancementManager.getAllAdvancements()) {
+            progress.put(advancementHolder.id(), progressOf.apply(advancementHolder));
+        }
+
+        // 表示されている進捗と、その進捗状況
+        List<AdvancementHolder> visible = new ArrayList<>();
+        Set<ResourceLocation> visibleIds = new HashSet<>();
+        Map<ResourceLocation, AdvancementProgress> visibleProgress = new HashMap<>();
+        for (AdvancementNode root : advancementManager.tree().roots()) {
+            AdvancementVisibilityEvaluator.evaluateVisibility(root,
+                    (node) -> progress.get(node.holder().id()).isDone(),
+                    (node, flag) -> {
+                        if (flag) {
+                            visible.add(node.holder());
+                            visibleIds.add(node.holder().id());
+                            visibleProgress.put(node.holder().id(), progress.get(node.holder().id()));
+                        }
+                    }
+            );
+        }
+
+        // パケットの作成時にコピーされないよう、変更不可のコレクションにしておく
+        return new TargetTree(List.copyOf(visible), visibleIds, progress, Map.copyOf(visibleProgress));
+    }
+
+    /**
+     * 進捗が進んだらキャッシュを破棄する
+     * 付与される前に呼ばれるため、次に取得したときに付与後の状態で求め直される
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onCriterionGrant(PlayerAdvancementCriterionGrantEvent event) {
+        trees.remove(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * 進捗を達成したらキャッシュを破棄する
+     */
+    @EventHandler
+    public void onAdvancementDone(PlayerAdvancementDoneEvent event) {
+        trees.remove(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * データパックを再読み込みしたら全てのキャッシュを破棄する
+     */
+    @EventHandler
+    public void onResourcesReloaded(ServerResourcesReloadedEvent event) {
+        trees.clear();
+        offlineGenerations.clear();
+        offlineTrees.clear();
+    }
+
+    /**
+     * ログイン時にオフラインのキャッシュを破棄する
+     * オンラインの間はプレイヤーデータから求める
+     */
+    @EventHandler
+    public void onJoin(PlayerJoinEvent event) {
+        invalidateOffline(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * ログアウト時にキャッシュを破棄する
+     */
+    @EventHandler
+    public void onQuit(PlayerQuitEvent event) {
+        trees.remove(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * 見られるプレイヤーの表示する進捗と進捗状況
+     * 同じプレイヤーを見る全てのプレイヤーで共有し、パケットにそのまま渡す
+     *
+     * @param visible         表示する進捗（変更不可）
+     * @param visibleIds      表示する進捗のID
+     * @param progress        全ての進捗の進捗状況
+     * @param visibleProgress 表示する進捗の進捗状況（変更不可）
+     */
+    public record TargetTree(
+            List<AdvancementHolder> visible,
+            Set<ResourceLocation> visibleIds,
+            Map<ResourceLocation, AdvancementProgress> progress,
+            Map<ResourceLocation, AdvancementProgress> visibleProgress
+    ) {
+    }
+}
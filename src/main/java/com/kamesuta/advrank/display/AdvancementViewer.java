@@ -1,6 +1,7 @@
 package com.kamesuta.advrank.display;
 
 import com.kamesuta.advrank.data.PlayerData;
+import com.kamesuta.advrank.data.ViewTarget;
 
 import com.comphenix.protocol.PacketType;
 import com.comphenix.protocol.events.PacketAdapter;
@@ -12,13 +13,12 @@ import net.minecraft.advancements.AdvancementProgress;
 import net.minecraft.network.protocol.game.ClientboundUpdateAdvancementsPacket;
 import net.minecraft.network.protocol.game.ServerboundSeenAdvancementsPacket;
 import net.minecraft.resources.ResourceLocation;
-import net.minecraft.server.PlayerAdvancements;
 import net.minecraft.server.ServerAdvancementManager;
-import net.minecraft.server.advancements.AdvancementVisibilityEvaluator;
 import org.bukkit.Bukkit;
 import org.bukkit.craftbukkit.CraftServer;
 import org.bukkit.craftbukkit.entity.CraftPlayer;
 import org.bukkit.entity.Player;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 
@@ -28,6 +28,15 @@ import static com.kamesuta.advrank.AdvRankingPlugin.app;
  * 他人の進捗を見る
  */
 public class AdvancementViewer {
+    /**
+     * 進捗画面を開いているプレイヤーへのランキングの差分送信
+     */
+    public final LiveRankingUpdater liveUpdater = new LiveRankingUpdater();
+    /**
+     * 見られるプレイヤーごとの表示する進捗のキャッシュ
+     */
+    public final AdvancementTreeCache treeCache = new AdvancementTreeCache();
+
     /**
      * プレイヤーが他のプレイヤーの進捗を見る
      *
@@ -36,42 +45,111 @@ public class AdvancementViewer {
      * @param target 見られるプレイヤー
      */
     public void seePlayerAdvancements(CraftPlayer viewer, CraftPlayer target) {
-        // 送信するデータ
-        List<AdvancementHolder> toAdd = new ArrayList<>();
-        Set<ResourceLocation> toRemove = new HashSet<>();
-        Map<ResourceLocation, AdvancementProgress> toUpdate = new HashMap<>();
+        // 表示されている進捗と進捗状況を取得する（進捗が進むまでキャッシュを使う）
+        sendTree(viewer, treeCache.get(target));
+    }
+
+    /**
+     * 進捗ツリー全体を送信する
+     * 進捗状況はクライアントが知っている（表示する）進捗の分だけ送る
+     *
+     * @param viewer 見るプレイヤー
+     * @param tree   表示する進捗と進捗状況
+     */
+    private void sendTree(CraftPlayer viewer, AdvancementTreeCache.TargetTree tree) {
+        viewer.getHandle().connection.send(new ClientboundUpdateAdvancementsPacket(true, tree.visible(), Set.of(), tree.visibleProgress(), false));
+    }
+
+    /**
+     * プレイヤーが今見ている進捗の、表示する進捗と進捗状況を取得する
+     *
+     * @param viewer 見るプレイヤー
+     * @return 表示する進捗と進捗状況（オフラインのプレイヤーの進捗を読み込み中の場合はnull）
+     */
+    public @Nullable AdvancementTreeCache.TargetTree getTargetTree(Player viewer) {
+        ViewTarget target = app.playerDataManager.getPlayerData(viewer).targetQueue;
+        Player online = target != null ? target.getOnlinePlayer() : viewer;
+        return online != null ? treeCache.get((CraftPlayer) online) : treeCache.getOffline(target.uuid());
+    }
 
-        // 進捗を取得する
+    /**
+     * 自分の進捗に戻す
+     * クライアントが自分の進捗を持っている場合は、表示する進捗の差分だけを送信する
+     * 表示中に追加された進捗状況はサーバーから随時送信されているため、送り直さない
+     *
+     * @param viewer 見るプレイヤー
+     */
+    private void restoreOwnAdvancements(CraftPlayer viewer) {
+        Set<ResourceLocation> shown = liveUpdater.getShown(viewer);
+        if (shown.isEmpty()) {
+            // クライアントが持っている進捗がわからない
+            seePlayerAdvancements(viewer, viewer);
+            return;
+        }
+
+        AdvancementTreeCache.TargetTree tree = treeCache.get(viewer);
         ServerAdvancementManager advancementManager = ((CraftServer) Bukkit.getServer()).getServer().getAdvancements();
-        PlayerAdvancements playerAdvancements = target.getHandle().getAdvancements();
-        for (AdvancementHolder advancementHolder : advancementManager.getAllAdvancements()) {
-            AdvancementProgress progress = playerAdvancements.getOrStartProgress(advancementHolder);
 
-            // 進捗を追加する
-            toUpdate.put(advancementHolder.id(), progress);
+        // 表示されなくなった進捗（親も削除する場合は親と一緒に削除されるため、一番上の進捗だけ削除する）
+        Set<ResourceLocation> toRemove = new HashSet<>();
+        for (ResourceLocation id : shown) {
+            if (tree.visibleIds().contains(id)) continue;
+            AdvancementNode node = advancementManager.tree().get(id);
+            AdvancementNode parent = node != null ? node.parent() : null;
+            if (parent == null || tree.visibleIds().contains(parent.holder().id()) || !shown.contains(parent.holder().id())) {
+                toRemove.add(id);
+            }
         }
 
-        // 表示されている進捗を追加する
-        for (AdvancementNode root : advancementManager.tree().roots()) {
-            AdvancementVisibilityEvaluator.evaluateVisibility(root,
-                    (node) -> playerAdvancements.getOrStartProgress(node.holder()).isDone(),
-                    (node, flag) -> {
-                        if (flag) {
-                            // 進捗を追加する
-                            toAdd.add(node.holder());
-                        }
-                    }
-            );
+        // 新しく表示された進捗
+        List<AdvancementHolder> toAdd = new ArrayList<>();
+        Map<ResourceLocation, AdvancementProgress> toUpdate = new HashMap<>();
+        for (AdvancementHolder holder : tree.visible()) {
+            if (shown.contains(holder.id())) continue;
+            toAdd.add(holder);
+            toUpdate.put(holder.id(), tree.progress().get(holder.id()));
         }
 
-        // 進捗を送信する
-        viewer.getHandle().connection.send(new ClientboundUpdateAdvancementsPacket(true, toAdd, toRemove, toUpdate, false));
+        if (toAdd.isEmpty() && toRemove.isEmpty()) return;
+        viewer.getHandle().connection.send(new ClientboundUpdateAdvancementsPacket(false, toAdd, toRemove, toUpdate, false));
+    }
+
+    /**
+     * プレイヤーが今見ている進捗を送り直す
+     * 他人の進捗を見ている場合はその進捗を、そうでなければ自分の進捗を送信する
+     * 他人がオフラインの場合は、データベースから読み込んでから送信する
+     *
+     * @param viewer 見るプレイヤー
+     */
+    public void refresh(Player viewer) {
+        PlayerData playerData = app.playerDataManager.getPlayerData(viewer);
+        ViewTarget target = playerData.targetQueue;
+        Player online = target != null ? target.getOnlinePlayer() : viewer;
+        if (online != null) {
+            seePlayerAdvancements((CraftPlayer) viewer, (CraftPlayer) online);
+            return;
+        }
+
+        // オフラインのプレイヤーの進捗はデータベースから読み込む
+        treeCache.loadOffline(target.uuid(), tree -> {
+            // 読み込み中に見る対象が変わった場合は送信しない
+            if (viewer.isOnline() && target.equals(playerData.targetQueue)) {
+                sendTree((CraftPlayer) viewer, tree);
+            }
+        });
     }
 
     /**
      * タブ閉じるパケットアダプターを登録する
      */
     public void register() {
+        // 差分送信のイベントリスナーを登録
+        app.getServer().getPluginManager().registerEvents(liveUpdater, app);
+        // 表示する進捗のキャッシュのイベントリスナーを登録
+        app.getServer().getPluginManager().registerEvents(treeCache, app);
+        // 達成記録が書き込まれたらオフラインのプレイヤーの進捗を読み直す
+        app.rankingManager.addFlushListener(written -> written.forEach(record -> treeCache.invalidateOffline(record.uuid())));
+
         app.protocolManager.addPacketListener(new PacketAdapter(app, PacketType.Play.Client.ADVANCEMENTS) {
             @Override
             public void onPacketReceiving(PacketEvent event) {
@@ -80,7 +158,7 @@ public class AdvancementViewer {
 
                 // 進捗タブが開かれた
                 if (packet.getAction() == ServerboundSeenAdvancementsPacket.Action.OPENED_TAB) {
-                    onAdvancementTabOpen(event.getPlayer());
+                    onAdvancementTabOpen(event.getPlayer(), packet.getTab());
                 }
 
                 // 進捗タブが閉じられた
@@ -95,8 +173,14 @@ public class AdvancementViewer {
      * 進捗タブが開かれた
      *
      * @param viewer 見るプレイヤー
+     * @param tab    開かれたタブのルート進捗のID
      */
-    private void onAdvancementTabOpen(Player viewer) {
+    private void onAdvancementTabOpen(Player viewer, @Nullable ResourceLocation tab) {
+        // 画面を開いている間はランキングの変化を差分で送信する
+        liveUpdater.onScreenOpen(viewer);
+        // 遅延装飾が有効な場合は、開いたタブを装飾する
+        liveUpdater.onTabOpen(viewer, tab);
+
         // プレイヤーデータを取得
         PlayerData playerData = app.playerDataManager.getPlayerData(viewer);
         if (playerData.needUpdate) {
@@ -114,13 +198,24 @@ public class AdvancementViewer {
      * @param viewer 見るプレイヤー
      */
     private void onAdvancementTabClose(Player viewer) {
+        liveUpdater.onScreenClose(viewer);
+
         // プレイヤーデータを取得
         PlayerData playerData = app.playerDataManager.getPlayerData(viewer);
+        // 他人の進捗やIDを表示していた場合は、タイトルや説明を戻すために全て送り直す
+        boolean resendAll = playerData.targetQueue != null || playerData.showId;
         // ターゲットをリセット
         playerData.targetQueue = null;
         // ID表示をリセット
         playerData.showId = false;
-        // 元に戻す
-        seePlayerAdvancements((CraftPlayer) viewer, (CraftPlayer) viewer);
+        // 元に戻す（パケット受信スレッドで進捗を読まないよう、メインスレッドで行う）
+        Bukkit.getScheduler().runTask(app, () -> {
+            if (!viewer.isOnline()) return;
+            if (resendAll) {
+                seePlayerAdvancements((CraftPlayer) viewer, (CraftPlayer) viewer);
+            } else {
+                restoreOwnAdvancements((CraftPlayer) viewer);
+            }
+        });
     }
 }
@@ -0,0 +1,102 @@
+package com.kamesuta.advrank.display;
+
+import io.papermc.paper.event.server.ServerResourcesReloadedEvent;
+import net.minecraft.advancements.AdvancementHolder;
+import net.minecraft.resources.ResourceLocation;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static com.kamesuta.advrank.AdvRankingPlugin.app;
+
+/**
+ * 見るプレイヤーによらない装飾済み進捗のキャッシュ
+ * 大会などで多くのプレイヤーが同じプレイヤーの進捗を見ると、同じ進捗を同じ内容で装飾することになるため、
+ * 装飾した進捗を共有し、見るプレイヤーの人数分組み立て直さないようにする
+ * 見るプレイヤー自身が達成済みの実績は、自分の順位と取得日時を含むため共有しない
+ * <p>
+ * キーに共有ランキングデータの表示部品を含めるため、ランキングを読み直すと別のエントリになる
+ * 古くなったエントリは上限を超えたときにまとめて破棄する
+ * パケット送信スレッドから呼び出される
+ */
+public class DecoratedAdvancementCache implements Listener {
+    /**
+     * 保持する装飾済み進捗の最大数
+     */
+    private final int maxEntries = Math.max(1, app.getConfig().getInt("display.decorationCacheSize", 20000));
+
+    /**
+     * 装飾の内容 → 装飾済みの進捗
+     */
+    private final Map<Key, AdvancementHolder> holders = new ConcurrentHashMap<>();
+    /**
+     * 装飾済みの進捗を使い回した数
+     */
+    private final AtomicLong hitCount = new AtomicLong();
+    /**
+     * 装飾した数
+     */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * 装飾済みの進捗を取得する
+     * 無い場合は装飾して保持する
+     *
+     * @param key       装飾の内容
+     * @param decorator 装飾する処理
+     * @return 装飾済みの進捗
+     */
+    public AdvancementHolder get(Key key, Supplier<AdvancementHolder> decorator) {
+        AdvancementHolder holder = holders.get(key);
+        if (holder != null) {
+            hitCount.incrementAndGet();
+            return holder;
+        }
+
+        missCount.incrementAndGet();
+        holder = decorator.get();
+        // 古い版のエントリが溜まらないよう、上限を超えたらまとめて破棄する
+        if (holders.size() >= maxEntries) {
+            holders.clear();
+        }
+        holders.put(key, holder);
+        return holder;
+    }
+
+    /**
+     * データパックを再読み込みしたら全て破棄する
+     * 同じIDでも進捗の内容が変わっている可能性がある
+     */
+    @EventHandler
+    public void onResourcesReloaded(ServerResourcesReloadedEvent event) {
+        holders.clear();
+    }
+
+    /**
+     * 装飾済み進捗の共有状況のレポートを生成する
+     *
+     * @return フォーマットされたレポート
+     */
+    public String generateReport() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        double hitRate = total > 0 ? hits * 100.0 / total : 0;
+        return "§a装飾の共有: §f%d/%d件 (%.1f%%) §a保持数: §f%d件".formatted(hits, total, hitRate, holders.size());
+    }
+
+    /**
+     * 装飾の内容
+     * 表示部品は共有ランキングデータの版ごとに作成されるため、インスタンスで比較する
+     *
+     * @param id          進捗のID
+     * @param fragments   共有ランキングデータの表示部品
+     * @param titleSuffix タイトルの後ろに付ける文字列（誰の進捗か）
+     * @param showId      実績IDを表示するか
+     */
+    public record Key(ResourceLocation id, RankingFragments fragments, String titleSuffix, boolean showId) {
+    }
+}
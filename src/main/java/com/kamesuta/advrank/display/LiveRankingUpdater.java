@@ -0,0 +1,334 @@
+package com.kamesuta.advrank.display;
+
+import net.minecraft.advancements.AdvancementHolder;
+import net.minecraft.advancements.AdvancementNode;
+import net.minecraft.advancements.AdvancementProgress;
+import net.minecraft.network.protocol.game.ClientboundUpdateAdvancementsPacket;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.ServerAdvancementManager;
+import org.bukkit.Bukkit;
+import org.bukkit.craftbukkit.CraftServer;
+import org.bukkit.craftbukkit.entity.CraftPlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.kamesuta.advrank.AdvRankingPlugin.app;
+
+/**
+ * 進捗画面を開いているプレイヤーに、ランキングの変化を差分で送信する
+ * ランキングが変わった実績だけを含む進捗パケットを送信し、送信時に{@link AdvancementRankingDisplay}で装飾させる
+ * 進捗ツリー全体を送り直さないため、画面を開いたまま順位の変化が反映される
+ * <p>
+ * クライアントは同じIDの進捗を追加すると二重に登録するため、一度削除してから追加し直す
+ * 削除すると子孫の進捗も消えるため、クライアントが持っている子孫も一緒に送り直す
+ * <p>
+ * タブごとの遅延装飾が有効な場合は、開いたことのあるタブの進捗だけを装飾する
+ * タブが初めて開かれたときに、そのタブの進捗を装飾して送り直す
+ * 装飾したタブは、進捗ツリー全体が送り直される（リセットする）まで装飾済みとして扱う
+ * <p>
+ * 画面の状態はログイン時と画面を開いたときにだけ作成する
+ * パケット送信スレッドからは作成しないため、ログアウト後に送信されたパケットで状態が残ることはない
+ */
+public class LiveRankingUpdater implements Listener {
+    /**
+     * 1人のプレイヤーに差分を送信する最短間隔（ミリ秒、0以下で無効）
+     */
+    private final long intervalMillis = app.getConfig().getLong("display.liveUpdateIntervalMillis", 1000);
+    /**
+     * 開いたタブの進捗だけを装飾するか
+     */
+    private final boolean lazyTabs = app.getConfig().getBoolean("display.lazyTabs", false);
+
+    /**
+     * プレイヤーごとの画面の状態
+     */
+    private final Map<UUID, ViewerState> viewerStates = new ConcurrentHashMap<>();
+
+    /**
+     * 進捗画面が開かれた
+     *
+     * @param viewer 見るプレイヤー
+     */
+    public void onScreenOpen(Player viewer) {
+        getViewerState(viewer).open = true;
+    }
+
+    /**
+     * 進捗タブが開かれた
+     * 遅延装飾が有効で、まだ装飾していないタブであれば、そのタブの進捗を装飾して送り直す
+     *
+     * @param viewer 見るプレイヤー
+     * @param tab    開かれたタブのルート進捗のID（タブがない場合はnull）
+     */
+    public void onTabOpen(Player viewer, @Nullable ResourceLocation tab) {
+        if (!lazyTabs || tab == null) return;
+        ViewerState state = getViewerState(viewer);
+        if (!state.decoratedTabs.add(tab)) return;
+        Bukkit.getScheduler().runTask(app, () -> send(state, Set.of(tab)));
+    }
+
+    /**
+     * 装飾するタブを取得する
+     * パケット送信スレッドから呼び出される
+     *
+     * @param viewer 見るプレイヤー
+     * @return 装飾するタブのルート進捗のID（遅延装飾が無効で、全て装飾する場合はnull）
+     */
+    public @Nullable Set<ResourceLocation> getDecoratedTabs(Player viewer) {
+        if (!lazyTabs) return null;
+        ViewerState state = viewerStates.get(viewer.getUniqueId());
+        return state != null ? state.decoratedTabs : Set.of();
+    }
+
+    /**
+     * 進捗画面が閉じられた
+     *
+     * @param viewer 見るプレイヤー
+     */
+    public void onScreenClose(Player viewer) {
+        ViewerState state = viewerStates.get(viewer.getUniqueId());
+        if (state == null) return;
+        state.open = false;
+        state.pending.clear();
+        // 装飾したタブはクライアントに残るため、次に画面を開いたときも送り直さない
+    }
+
+    /**
+     * プレイヤーに送信する進捗パケットから、クライアントが持っている進捗を記録する
+     * パケット送信スレッドから呼び出される
+     *
+     * @param viewer 見るプレイヤー
+     * @param packet 送信する進捗パケット
+     */
+    public void onPacketSending(Player viewer, ClientboundUpdateAdvancementsPacket packet) {
+        // ログアウト後に送信されたパケットは記録しない
+        ViewerState state = viewerStates.get(viewer.getUniqueId());
+        if (state == null) return;
+        if (packet.shouldReset()) {
+            state.shown.clear();
+            // クライアントの進捗が全て置き換えられ、装飾も消えるため、次に開いたタブから装飾し直す
+            state.decoratedTabs.clear();
+        }
+        state.shown.removeAll(packet.getRemoved());
+        for (AdvancementHolder holder : packet.getAdded()) {
+            state.shown.add(holder.id());
+        }
+    }
+
+    /**
+     * クライアントが持っている進捗のIDを取得する
+     *
+     * @param viewer 見るプレイヤー
+     * @return 進捗のID（変更不可）
+     */
+    public Set<ResourceLocation> getShown(Player viewer) {
+        ViewerState state = viewerStates.get(viewer.getUniqueId());
+        return state != null ? Collections.unmodifiableSet(state.shown) : Set.of();
+    }
+
+    /**
+     * ランキングが変わった実績を、その実績を表示している全てのプレイヤーに送信する
+     *
+     * @param keys 実績キー
+     */
+    public void onRankingChanged(Collection<String> keys) {
+        if (intervalMillis <= 0 || keys.isEmpty()) return;
+        for (ViewerState state : viewerStates.values()) {
+            queue(state, keys);
+        }
+    }
+
+    /**
+     * 見るプレイヤー自身の順位が変わった実績を送信する
+     *
+     * @param viewer 見るプレイヤー
+     * @param keys   実績キー
+     */
+    public void onRankingChanged(Player viewer, Collection<String> keys) {
+        if (intervalMillis <= 0 || keys.isEmpty()) return;
+        ViewerState state = viewerStates.get(viewer.getUniqueId());
+        if (state != null) {
+            queue(state, keys);
+        }
+    }
+
+    /**
+     * 送信待ちに追加し、送信を予約する
+     */
+    private void queue(ViewerState state, Collection<String> keys) {
+        if (!state.open) return;
+        ServerAdvancementManager advancementManager = ((CraftServer) Bukkit.getServer()).getServer().getAdvancements();
+        for (String key : keys) {
+            ResourceLocation id = ResourceLocation.tryParse(key);
+            // クライアントが持っていない（表示されていない）進捗は送らない
+            if (id == null || !state.shown.contains(id)) continue;
+            // 装飾していないタブの進捗は送っても変わらない
+            if (lazyTabs && !state.decoratedTabs.contains(rootOf(advancementManager, id))) continue;
+            state.pending.add(id);
+        }
+        if (state.pending.isEmpty() || !app.isEnabled() || !state.scheduled.compareAndSet(false, true)) return;
+
+        // 前回の送信から間隔を空ける
+        long waitMillis = Math.max(0, state.lastSentMillis + intervalMillis - System.currentTimeMillis());
+        Bukkit.getScheduler().runTaskLater(app, () -> flush(state), waitMillis / 50);
+    }
+
+    /**
+     * 送信待ちの実績をまとめて送信する（メインスレッド）
+     */
+    private void flush(ViewerState state) {
+        state.scheduled.set(false);
+        Set<ResourceLocation> ids = new HashSet<>();
+        for (ResourceLocation id : state.pending) {
+            state.pending.remove(id);
+            ids.add(id);
+        }
+        if (!state.open) return;
+        send(state, ids);
+    }
+
+    /**
+     * 進捗を送り直す（メインスレッド）
+     *
+     * @param state 見るプレイヤーの状態
+     * @param ids   送り直す進捗のID（子孫も送り直す）
+     */
+    private void send(ViewerState state, Set<ResourceLocation> ids) {
+        Player viewer = state.viewer;
+        if (ids.isEmpty() || !viewer.isOnline()) return;
+
+        // 見ている進捗の進捗状況（他人の進捗を見ている場合はその進捗）
+        AdvancementTreeCache.TargetTree tree = app.viewer.getTargetTree(viewer);
+        if (tree == null) return;
+        ServerAdvancementManager advancementManager = ((CraftServer) Bukkit.getServer()).getServer().getAdvancements();
+
+        // 送り直す進捗と、その子孫のうちクライアントが持っているもの
+        Map<ResourceLocation, AdvancementHolder> resend = new LinkedHashMap<>();
+        for (ResourceLocation id : ids) {
+            AdvancementNode node = advancementManager.tree().get(id);
+            if (node != null) {
+                collect(node, state.shown, resend);
+            }
+        }
+        if (resend.isEmpty()) return;
+
+        List<AdvancementHolder> toAdd = new ArrayList<>(resend.values());
+        Set<ResourceLocation> toRemove = new HashSet<>();
+        Map<ResourceLocation, AdvancementProgress> toUpdate = new HashMap<>();
+        for (AdvancementHolder holder : toAdd) {
+            // 親も送り直す場合は親と一緒に削除されるため、削除するのは一番上の進捗だけ
+            if (holder.value().parent().map(parent -> !resend.containsKey(parent)).orElse(true)) {
+                toRemove.add(holder.id());
+            }
+            // 追加し直した進捗は進捗状況も送り直さないと未達成として表示される
+            toUpdate.put(holder.id(), tree.progress().get(holder.id()));
+        }
+
+        ((CraftPlayer) viewer).getHandle().connection.send(new ClientboundUpdateAdvancementsPacket(false, toAdd, toRemove, toUpdate, false));
+        state.lastSentMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * 進捗と、その子孫のうちクライアントが持っているものを集める
+     */
+    private static void collect(AdvancementNode node, Set<ResourceLocation> shown, Map<ResourceLocation, AdvancementHolder> resend) {
+        AdvancementHolder holder = node.holder();
+        if (!shown.contains(holder.id()) || resend.putIfAbsent(holder.id(), holder) != null) return;
+        for (AdvancementNode child : node.children()) {
+            collect(child, shown, resend);
+        }
+    }
+
+    /**
+     * 進捗が属するタブのルート進捗のIDを取得する
+     *
+     * @param advancementManager 進捗マネージャー
+     * @param id                 進捗のID
+     * @return ルート進捗のID（ツリーにない場合は進捗のID）
+     */
+    public static ResourceLocation rootOf(ServerAdvancementManager advancementManager, ResourceLocation id) {
+        AdvancementNode node = advancementManager.tree().get(id);
+        return node != null ? node.root().holder().id() : id;
+    }
+
+    /**
+     * プレイヤーの画面の状態を取得する（無ければ作成する）
+     * パケット送信スレッドからは呼び出さないこと
+     */
+    private ViewerState getViewerState(Player viewer) {
+        return viewerStates.computeIfAbsent(viewer.getUniqueId(), k -> new ViewerState(viewer));
+    }
+
+    /**
+     * ログイン時に状態を作成する
+     * ログイン後に送信される進捗ツリー全体から、クライアントが持っている進捗を記録するため、最初に作成する
+     */
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onJoin(PlayerJoinEvent event) {
+        getViewerState(event.getPlayer());
+    }
+
+    /**
+     * ログアウト時に状態を破棄する
+     */
+    @EventHandler
+    public void onQuit(PlayerQuitEvent event) {
+        viewerStates.remove(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * プレイヤーごとの画面の状態
+     */
+    private static class ViewerState {
+        /**
+         * 見るプレイヤー
+         */
+        private final Player viewer;
+        /**
+         * クライアントが持っている進捗のID
+         */
+        private final Set<ResourceLocation> shown = ConcurrentHashMap.newKeySet();
+        /**
+         * 送信待ちの進捗のID
+         */
+        private final Set<ResourceLocation> pending = ConcurrentHashMap.newKeySet();
+        /**
+         * 装飾済みのタブのルート進捗のID（遅延装飾が有効な場合のみ使用する）
+         */
+        private final Set<ResourceLocation> decoratedTabs = ConcurrentHashMap.newKeySet();
+        /**
+         * 送信を予約済みか
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        /**
+         * 進捗画面を開いているか
+         */
+        private volatile boolean open;
+        /**
+         * 前回差分を送信した時刻（ミリ秒）
+         */
+        private volatile long lastSentMillis;
+
+        private ViewerState(Player viewer) {
+            this.viewer = viewer;
+        }
+    }
+}
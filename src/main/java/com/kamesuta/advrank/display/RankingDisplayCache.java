@@ -0,0 +1,467 @@
+package com.kamesuta.advrank.display;
+
+import com.kamesuta.advrank.data.RankingProgressData;
+import com.kamesuta.advrank.data.RankingSnapshot;
+import net.minecraft.advancements.AdvancementHolder;
+import net.minecraft.server.ServerAdvancementManager;
+import org.bukkit.Bukkit;
+import org.bukkit.craftbukkit.CraftServer;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.kamesuta.advrank.AdvRankingPlugin.app;
+
+/**
+ * ランキング表示用のキャッシュ
+ * パケット送信スレッドでデータベースにアクセスしないよう、表示に使うランキングデータを非同期で事前に読み込んでおく
+ * キャッシュに無いデータは非同期で読み込み、読み込み完了後に進捗を再送信する
+ * 読み込み待ちの実績はまとめて読み込むため、進捗ツリーの大きさによらずクエリの回数は一定になる
+ * <p>
+ * 達成人数や上位・下位のプレイヤーは全員で共通なので実績ごとに1回だけ読み込んで共有し、
+ * 見るプレイヤーごとに読み込むのは自分の順位だけにする
+ * 共有データの表示部品（{@link RankingFragments}）も読み込み時に組み立てて共有する
+ */
+public class RankingDisplayCache implements Listener {
+    private static final Logger logger = Logger.getLogger(RankingDisplayCache.class.getName());
+
+    /**
+     * 上位プレイヤーの表示数
+     */
+    public static final int LIMIT_TOP = 3;
+    /**
+     * 下位プレイヤーの表示数
+     */
+    public static final int LIMIT_BOTTOM = 3;
+    /**
+     * 共有ランキングデータの読み込みに失敗したときに再試行するまでの待ち時間（tick）
+     */
+    private static final long RETRY_DELAY_TICKS = 100;
+    /**
+     * 読み込みに失敗し続けた場合の再試行までの最大の待ち時間（tick）
+     */
+    private static final long MAX_RETRY_DELAY_TICKS = 20 * 60;
+    /**
+     * 読み込みに失敗した共有ランキングデータの版数（次の読み込みで必ず読み直す）
+     */
+    private static final long FAILED_VERSION = -1;
+
+    /**
+     * 実績キー → 全員で共有するランキングデータ
+     */
+    private final Map<String, SharedEntry> snapshots = new ConcurrentHashMap<>();
+    /**
+     * 実績キー → ランキングデータの版数（新しい達成があるたびに増える）
+     */
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    /**
+     * 読み込み待ちの共有ランキングデータの実績キー
+     */
+    private final Set<String> pendingSnapshots = ConcurrentHashMap.newKeySet();
+    /**
+     * プレイヤーごとのキャッシュ
+     */
+    private final Map<UUID, ViewerCache> viewerCaches = new ConcurrentHashMap<>();
+    /**
+     * 読み込み中か
+     */
+    private final AtomicBoolean loading = new AtomicBoolean();
+    /**
+     * 開いたタブの進捗だけを装飾するか
+     * 有効な場合は、装飾するタブの進捗をパケットの送信時に読み込むため、ログイン時には読み込まない
+     */
+    private final boolean lazyTabs = app.getConfig().getBoolean("display.lazyTabs", false);
+
+    /**
+     * キャッシュからランキングデータを取得する
+     * キャッシュに無い場合は非同期読み込みを予約し、読み込み完了後に進捗を再送信する
+     * このメソッドはデータベースにアクセスしないため、パケット送信スレッドから呼び出せる
+     *
+     * @param viewer 見るプレイヤー
+     * @param key    実績キー
+     * @return キャッシュされたデータ（読み込み前の場合はnull）
+     */
+    public @Nullable Entry get(Player viewer, String key) {
+        ViewerCache cache = getViewerCache(viewer);
+        SharedEntry shared = snapshots.get(key);
+        ViewerEntry own = cache.entries.get(key);
+        if (shared == null || own == null) {
+            // 読み込み後に再送信する
+            cache.missed.set(true);
+            if (shared == null) pendingSnapshots.add(key);
+            if (own == null) cache.pending.add(key);
+            scheduleLoad();
+            return null;
+        }
+
+        RankingSnapshot snapshot = shared.snapshot();
+        if (snapshot == null || shared.fragments() == null || own.failed()) {
+            return new Entry(null, null, snapshot != null ? snapshot.advancementId() : -1);
+        }
+        return new Entry(snapshot.withProgress(own.progress()), shared.fragments(), snapshot.advancementId());
+    }
+
+    /**
+     * 全ての実績のランキングデータを非同期で読み込む
+     * 共有データは既に読み込み済みであれば読み込まない
+     *
+     * @param viewer 見るプレイヤー
+     */
+    public void prefetch(Player viewer) {
+        ViewerCache cache = getViewerCache(viewer);
+        ServerAdvancementManager advancementManager = ((CraftServer) Bukkit.getServer()).getServer().getAdvancements();
+        for (AdvancementHolder holder : advancementManager.getAllAdvancements()) {
+            // 表示されない実績は読み込まない
+            if (holder.value().display().isEmpty()) continue;
+            String key = holder.id().toString();
+            if (!snapshots.containsKey(key)) pendingSnapshots.add(key);
+            cache.pending.add(key);
+        }
+        scheduleLoad();
+    }
+
+    /**
+     * 新しい達成記録に合わせてランキングデータを読み直す
+     * 共有データは版数を上げて1回だけ読み直し、個人の順位は達成したプレイヤーの分だけ読み直す
+     * ただし、インポートなどで既存の達成より前の日時の達成が記録された場合は、それより後に達成した全員の順位が変わるため、
+     * その実績を読み込み済みの全てのプレイヤーの順位を読み直す
+     * 読み直しが終わるまでは古いデータを返す
+     *
+     * @param key       実績キー
+     * @param uuid      達成したプレイヤーのUUID
+     * @param timestamp 達成日時
+     */
+    public void invalidate(String key, UUID uuid, Timestamp timestamp) {
+        versions.merge(key, 1L, Long::sum);
+        SharedEntry shared = snapshots.get(key);
+        if (shared != null) {
+            pendingSnapshots.add(key);
+        }
+        if (shared == null || shared.snapshot() == null || isBackdated(shared.snapshot(), timestamp.toInstant())) {
+            // 最新の達成か分からない場合も全員分読み直す
+            queueAllViewers(key);
+        } else {
+            ViewerCache cache = viewerCaches.get(uuid);
+            if (cache != null && cache.entries.containsKey(key)) {
+                cache.pending.add(key);
+            }
+        }
+        scheduleLoad();
+    }
+
+    /**
+     * 保存した達成順位を振り直した実績のランキングデータを、全てのプレイヤーの分読み直す
+     *
+     * @param advancementId 実績ID
+     */
+    public void invalidateRanks(int advancementId) {
+        for (Map.Entry<String, SharedEntry> entry : snapshots.entrySet()) {
+            RankingSnapshot snapshot = entry.getValue().snapshot();
+            if (snapshot == null || snapshot.advancementId() != advancementId) continue;
+            versions.merge(entry.getKey(), 1L, Long::sum);
+            pendingSnapshots.add(entry.getKey());
+            queueAllViewers(entry.getKey());
+        }
+        scheduleLoad();
+    }
+
+    /**
+     * 実績の順位を読み込み済みの全てのプレイヤーの読み直しを予約する
+     */
+    private void queueAllViewers(String key) {
+        for (ViewerCache cache : viewerCaches.values()) {
+            if (cache.entries.containsKey(key)) {
+                cache.pending.add(key);
+            }
+        }
+    }
+
+    /**
+     * 既存の達成より前の日時の達成か
+     * 最新の達成と同じ日時であれば、同順位になるだけで他の順位は変わらない
+     *
+     * @param snapshot  読み込み済みのランキングデータ
+     * @param timestamp 達成日時
+     */
+    private static boolean isBackdated(RankingSnapshot snapshot, Instant timestamp) {
+        for (RankingProgressData.PlayerProgress progress : snapshot.top()) {
+            if (timestamp.isBefore(progress.timestamp())) return true;
+        }
+        for (RankingProgressData.PlayerProgress progress : snapshot.bottom()) {
+            if (timestamp.isBefore(progress.timestamp())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * プレイヤーのキャッシュを取得する
+     */
+    private ViewerCache getViewerCache(Player viewer) {
+        return viewerCaches.computeIfAbsent(viewer.getUniqueId(), k -> new ViewerCache(viewer));
+    }
+
+    /**
+     * 読み込みタスクを予約する
+     * 既に読み込み中の場合は、実行中のタスクが続けて読み込む
+     */
+    private void scheduleLoad() {
+        if (loading.compareAndSet(false, true)) {
+            Bukkit.getScheduler().runTaskAsynchronously(app, this::loadPending);
+        }
+    }
+
+    /**
+     * 読み込み待ちのデータが残っているか
+     */
+    private boolean hasPending() {
+        return !pendingSnapshots.isEmpty() || viewerCaches.values().stream().anyMatch(cache -> !cache.pending.isEmpty());
+    }
+
+    /**
+     * 予約されたランキングデータを読み込む（非同期スレッド）
+     * 読み込みは1つのタスクで順番に行うため、同じ実績の共有データを同時に何度も読み込むことはない
+     */
+    private void loadPending() {
+        do {
+            // 共有データ
+            Map<String, Long> snapshotVersions = new HashMap<>();
+            for (String key : pendingSnapshots) {
+                pendingSnapshots.remove(key);
+                long version = versions.getOrDefault(key, 0L);
+                SharedEntry cached = snapshots.get(key);
+                // 他のプレイヤーのために最新の版を読み込み済み
+                if (cached != null && cached.version() == version) continue;
+                snapshotVersions.put(key, version);
+            }
+            if (!snapshotVersions.isEmpty()) {
+                loadSnapshots(snapshotVersions);
+            }
+
+            // 個人の順位
+            for (ViewerCache cache : viewerCaches.values()) {
+                List<String> keys = new ArrayList<>();
+                for (String key : cache.pending) {
+                    cache.pending.remove(key);
+                    keys.add(key);
+                }
+                if (!keys.isEmpty()) {
+                    loadProgress(cache, keys);
+                }
+            }
+            loading.set(false);
+        } while (hasPending() && loading.compareAndSet(false, true));
+
+        // キャッシュに無かったデータがあれば、進捗を再送信して反映する
+        for (ViewerCache cache : viewerCaches.values()) {
+            if (!cache.missed.getAndSet(false)) continue;
+            Player viewer = cache.viewer;
+            Bukkit.getScheduler().runTask(app, () -> {
+                if (viewer.isOnline()) {
+                    app.viewer.refresh(viewer);
+                }
+            });
+        }
+    }
+
+    /**
+     * 全員で共有するランキングデータをまとめて読み込む
+     *
+     * @param keyVersions 実績キー → 読み込む時点の版数
+     */
+    private void loadSnapshots(Map<String, Long> keyVersions) {
+        Map<String, RankingSnapshot> loaded;
+        try {
+            loaded = app.rankingManager.getRankingSnapshots(keyVersions.keySet(), LIMIT_TOP, LIMIT_BOTTOM);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "ランキングデータの読み込みに失敗しました: " + keyVersions.keySet(), e);
+            for (String key : keyVersions.keySet()) {
+                // 読み込み済みのデータはそのまま使い、初めての読み込みの場合も失敗を記録して再送信が繰り返されないようにする
+                snapshots.putIfAbsent(key, new SharedEntry(null, null, FAILED_VERSION));
+            }
+            retrySnapshots(keyVersions.keySet());
+            return;
+        }
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : keyVersions.entrySet()) {
+            RankingSnapshot snapshot = loaded.get(entry.getKey());
+            SharedEntry old = snapshots.put(entry.getKey(), new SharedEntry(snapshot, createFragments(entry.getKey(), snapshot), entry.getValue()));
+            if (old != null) changed.add(entry.getKey());
+        }
+        // 読み直した実績を、進捗画面を開いているプレイヤーに送信する
+        app.viewer.liveUpdater.onRankingChanged(changed);
+    }
+
+    /**
+     * 読み込みに失敗した共有ランキングデータを、少し待ってから読み直す
+     * 読み込み済みのデータの版数は古いままなので、次の読み込みで読み直される
+     *
+     * @param keys 実績キー
+     */
+    private void retrySnapshots(Collection<String> keys) {
+        if (!app.isEnabled()) return;
+        List<String> retryKeys = List.copyOf(keys);
+        Bukkit.getScheduler().runTaskLaterAsynchronously(app, () -> {
+            pendingSnapshots.addAll(retryKeys);
+            scheduleLoad();
+        }, RETRY_DELAY_TICKS);
+    }
+
+    /**
+     * 共有データの表示部品を組み立てる
+     *
+     * @param key      実績キー
+     * @param snapshot ランキングデータ（取得に失敗した場合はnull）
+     * @return 表示部品（組み立てられなかった場合はnull）
+     */
+    private @Nullable RankingFragments createFragments(String key, @Nullable RankingSnapshot snapshot) {
+        if (snapshot == null) return null;
+        try {
+            return new RankingFragments(snapshot);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "ランキングの表示部品の作成に失敗しました: " + key, e);
+            return null;
+        }
+    }
+
+    /**
+     * 見るプレイヤーの順位をまとめて読み込む
+     *
+     * @param cache 見るプレイヤーのキャッシュ
+     * @param keys  実績キー
+     */
+    private void loadProgress(ViewerCache cache, List<String> keys) {
+        try {
+            Map<String, RankingProgressData.PlayerProgress> loaded = app.rankingManager.getPlayerProgressBatch(cache.viewer.getUniqueId(), keys);
+            List<String> changed = new ArrayList<>();
+            for (String key : keys) {
+                if (cache.entries.put(key, new ViewerEntry(loaded.get(key), false)) != null) changed.add(key);
+            }
+            // 自分の順位が変わった実績を、進捗画面を開いていれば送信する
+            app.viewer.liveUpdater.onRankingChanged(cache.viewer, changed);
+            cache.failures.set(0);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "プレイヤーの順位の読み込みに失敗しました: " + keys, e);
+            for (String key : keys) {
+                // 読み込み済みの順位はそのまま使い、初めての読み込みの場合も失敗を記録して再送信が繰り返されないようにする
+                cache.entries.putIfAbsent(key, new ViewerEntry(null, true));
+            }
+            retryProgress(cache, keys);
+        }
+    }
+
+    /**
+     * 読み込みに失敗したプレイヤーの順位を、少し待ってから読み直す
+     * 失敗が続くほど待ち時間を延ばす
+     * 読み直せた順位は、進捗画面を開いていれば{@link LiveRankingUpdater}が送信する
+     *
+     * @param cache 見るプレイヤーのキャッシュ
+     * @param keys  実績キー
+     */
+    private void retryProgress(ViewerCache cache, Collection<String> keys) {
+        if (!app.isEnabled()) return;
+        int failures = cache.failures.incrementAndGet();
+        long delay = Math.min(RETRY_DELAY_TICKS << Math.min(failures - 1, 10), MAX_RETRY_DELAY_TICKS);
+        List<String> retryKeys = List.copyOf(keys);
+        Bukkit.getScheduler().runTaskLaterAsynchronously(app, () -> {
+            // ログアウトしたプレイヤーは読み直さない
+            if (viewerCaches.get(cache.viewer.getUniqueId()) != cache) return;
+            cache.pending.addAll(retryKeys);
+            scheduleLoad();
+        }, delay);
+    }
+
+    /**
+     * ログイン時にランキングデータを事前に読み込む
+     * タブごとの遅延装飾が有効な場合は、開いたタブの分だけを装飾時に読み込む
+     */
+    @EventHandler
+    public void onJoin(PlayerJoinEvent event) {
+        if (lazyTabs) return;
+        prefetch(event.getPlayer());
+    }
+
+    /**
+     * ログアウト時にキャッシュを破棄する
+     */
+    @EventHandler
+    public void onQuit(PlayerQuitEvent event) {
+        viewerCaches.remove(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * キャッシュされたランキングデータ
+     *
+     * @param ranking       ランキングデータ（取得に失敗した場合はnull）
+     * @param fragments     全員で共有する表示部品（取得に失敗した場合はnull）
+     * @param advancementId 実績ID（存在しない場合は-1）
+     */
+    public record Entry(@Nullable RankingProgressData ranking, @Nullable RankingFragments fragments, int advancementId) {
+    }
+
+    /**
+     * 全員で共有するランキングデータ
+     *
+     * @param snapshot  ランキングデータ（取得に失敗した場合はnull）
+     * @param fragments 表示部品（取得に失敗した場合はnull）
+     * @param version   読み込んだ時点の版数（取得に失敗した場合は{@link #FAILED_VERSION}）
+     */
+    private record SharedEntry(@Nullable RankingSnapshot snapshot, @Nullable RankingFragments fragments, long version) {
+    }
+
+    /**
+     * 見るプレイヤーの順位
+     *
+     * @param progress 進捗（未達成の場合はnull）
+     * @param failed   取得に失敗したか
+     */
+    private record ViewerEntry(@Nullable RankingProgressData.PlayerProgress progress, boolean failed) {
+    }
+
+    /**
+     * プレイヤーごとのキャッシュ
+     */
+    private static class ViewerCache {
+        /**
+         * 見るプレイヤー
+         */
+        private final Player viewer;
+        /**
+         * 読み込み済みの順位
+         */
+        private final Map<String, ViewerEntry> entries = new ConcurrentHashMap<>();
+        /**
+         * 読み込み待ちの実績キー
+         */
+        private final Set<String> pending = ConcurrentHashMap.newKeySet();
+        /**
+         * キャッシュに無いデータを表示しようとしたか
+         */
+        private final AtomicBoolean missed = new AtomicBoolean();
+        /**
+         * 順位の読み込みに続けて失敗した回数
+         */
+        private final AtomicInteger failures = new AtomicInteger();
+
+        private ViewerCache(Player viewer) {
+            this.viewer = viewer;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.kamesuta.advrank.display;
+
+import com.kamesuta.advrank.data.RankingProgressData;
+import com.kamesuta.advrank.data.RankingSnapshot;
+import net.minecraft.ChatFormatting;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.MutableComponent;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 実績の説明文に追加するランキング部分の表示部品
+ * トップ3・直近達成3位・全ランキングへのリンクは見るプレイヤーによらないため、
+ * 共有ランキングデータの版ごとに1回だけ組み立て、全てのプレイヤーのパケットで使い回す
+ * 見るプレイヤー自身がランキングに含まれる場合だけ、その行を強調したものに差し替えて組み立て直す
+ */
+public class RankingFragments {
+    /**
+     * 下位プレイヤーを表示する最低の達成人数（上位と重複しないようにする）
+     */
+    private static final int MIN_DONE_FOR_BOTTOM = 6;
+
+    /**
+     * 上位プレイヤーの行
+     */
+    private final List<Line> top;
+    /**
+     * 下位プレイヤーの行（表示しない場合は空）
+     */
+    private final List<Line> bottom;
+    /**
+     * 全ランキング表示コマンドのリンク（実績IDがない場合はnull）
+     */
+    private final @Nullable Component link;
+    /**
+     * 見るプレイヤーがランキングに含まれない場合のランキング部分全体
+     */
+    private final Component shared;
+
+    /**
+     * ランキングデータから表示部品を組み立てる
+     * プレイヤー名の取得を含むため、パケット送信スレッドではなく読み込み時に呼び出す
+     *
+     * @param snapshot 全員で共有するランキングデータ
+     */
+    public RankingFragments(RankingSnapshot snapshot) {
+        this.top = toLines(snapshot.top());
+        this.bottom = snapshot.done() >= MIN_DONE_FOR_BOTTOM ? toLines(snapshot.bottom()) : List.of();
+        this.link = snapshot.advancementId() != -1
+                ? Component.empty()
+                        .append(Component.literal("/adv_rank " + snapshot.advancementId()).withStyle(ChatFormatting.BLUE))
+                        .append(Component.literal(" で全てのランキングを見る").withStyle(ChatFormatting.GRAY))
+                : null;
+        this.shared = build(null);
+    }
+
+    /**
+     * 説明文にランキング部分を追加する
+     *
+     * @param description 出力先
+     * @param own         見るプレイヤーの進捗（未達成の場合はnull）
+     */
+    public void appendTo(MutableComponent description, @Nullable RankingProgressData.PlayerProgress own) {
+        description.append(contains(top, own) || contains(bottom, own) ? build(own) : shared);
+    }
+
+    /**
+     * ランキング部分を組み立てる
+     *
+     * @param own 強調する見るプレイヤーの進捗（強調しない場合はnull）
+     */
+    private Component build(@Nullable RankingProgressData.PlayerProgress own) {
+        MutableComponent section = Component.empty();
+        // 上位プレイヤー
+        if (!top.isEmpty()) {
+            section.append("\n\n")
+                    .append(Component.literal("トップ3").withStyle(ChatFormatting.YELLOW));
+            appendLines(section, top, own);
+
+            if (link != null) {
+                section.append("\n").append(link);
+            }
+        }
+        // 下位プレイヤー
+        if (!bottom.isEmpty()) {
+            section.append("\n\n")
+                    .append(Component.literal("直近達成3位").withStyle(ChatFormatting.BLUE));
+            appendLines(section, bottom, own);
+        }
+        return section;
+    }
+
+    /**
+     * ランキングの行を追加する
+     * 見るプレイヤーの行だけ強調した行を作成し、他は組み立て済みの行を使う
+     */
+    private static void appendLines(MutableComponent section, List<Line> lines, @Nullable RankingProgressData.PlayerProgress own) {
+        for (Line line : lines) {
+            section.append("\n")
+                    .append(line.isOwn(own) ? RankingProgressData.rankingLine(line.progress(), true) : line.component());
+        }
+    }
+
+    /**
+     * 見るプレイヤーがランキングの行に含まれるか
+     */
+    private static boolean contains(List<Line> lines, @Nullable RankingProgressData.PlayerProgress own) {
+        for (Line line : lines) {
+            if (line.isOwn(own)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 進捗のリストを強調なしの行に変換する
+     */
+    private static List<Line> toLines(List<RankingProgressData.PlayerProgress> ranking) {
+        List<Line> lines = new ArrayList<>(ranking.size());
+        for (RankingProgressData.PlayerProgress progress : ranking) {
+            lines.add(new Line(progress, RankingProgressData.rankingLine(progress, false)));
+        }
+        return lines;
+    }
+
+    /**
+     * ランキングの1行
+     *
+     * @param progress  行のプレイヤーの進捗
+     * @param component 強調なしの行
+     */
+    private record Line(RankingProgressData.PlayerProgress progress, Component component) {
+        /**
+         * 見るプレイヤー自身の行か
+         */
+        private boolean isOwn(@Nullable RankingProgressData.PlayerProgress own) {
+            return own != null && progress.player().equals(own.player());
+        }
+    }
+}
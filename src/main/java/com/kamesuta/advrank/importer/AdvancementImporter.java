@@ -1,60 +1,116 @@
 package com.kamesuta.advrank.importer;
 
+import com.kamesuta.advrank.database.AdvancementWriteQueue;
+import com.kamesuta.advrank.database.ImportManifestRepository;
 import com.kamesuta.advrank.database.RankingManager;
+import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static com.kamesuta.advrank.AdvRankingPlugin.app;
+
 /**
  * 実績データインポーター
  * JSONファイルからプレイヤーの実績データをデータベースに取り込む
  * インポート全体の制御フローを担当し、統計情報の管理も行う
+ * <p>
+ * 処理は「複数スレッドでのファイル解析 → 件数制限付きキュー → 1つのスレッドでのまとめ書き」の順に流れる
+ * 全て非同期で行うため、コマンドはすぐに戻り、進捗はコマンド実行者に随時通知する
+ * インポートしたファイルはサイズ・更新日時・内容のハッシュを記録し、次回は変更されたファイルだけを読み込む
  */
 public class AdvancementImporter {
     private static final Logger logger = Logger.getLogger(AdvancementImporter.class.getName());
-    
+
+    /**
+     * 解析済みで書き込み待ちのファイルの最大数
+     * 書き込みが追いつかない場合は解析スレッドが待つ
+     */
+    private static final int QUEUE_CAPACITY = 256;
+    /**
+     * 進捗を報告する間隔（ミリ秒）
+     */
+    private static final long PROGRESS_INTERVAL_MILLIS = 5000;
+    /**
+     * インポートを実行中か（同時に複数のインポートを実行しない）
+     */
+    private static final AtomicBoolean running = new AtomicBoolean();
+
     private final RankingManager rankingManager;
-    private final JsonFileProcessor jsonProcessor;
 
     public AdvancementImporter(RankingManager rankingManager) {
         this.rankingManager = rankingManager;
-        this.jsonProcessor = new JsonFileProcessor();
     }
 
     /**
-     * JSONファイルから実績データをインポートする
-     * 
+     * JSONファイルから実績データを非同期でインポートする
+     *
      * @param sender コマンド実行者（進捗メッセージの送信先）
+     * @param full   前回のインポートから変更されていないファイルも読み込む場合true
+     */
+    public void importFromJson(CommandSender sender, boolean full) {
+        if (!running.compareAndSet(false, true)) {
+            sender.sendMessage("§cインポートは既に実行中です");
+            return;
+        }
+
+        sender.sendMessage("§b=== 実績データインポート開始 ===");
+        Bukkit.getScheduler().runTaskAsynchronously(app, () -> {
+            try {
+                runImport(sender, full);
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "JSON インポート中にエラーが発生しました", e);
+                sendMessage(sender, "§cインポート中にエラーが発生しました。ログを確認してください。");
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    /**
+     * インポートを実行する（非同期スレッド）
      */
-    public void importFromJson(CommandSender sender) {
+    private void runImport(CommandSender sender, boolean full) throws InterruptedException {
         // advancementsディレクトリの確認
         var advancementsDir = getAdvancementsDirectory();
         if (!advancementsDir.exists()) {
-            sender.sendMessage("§cadvancements ディレクトリが存在しません: " + advancementsDir.getAbsolutePath());
+            sendMessage(sender, "§cadvancements ディレクトリが存在しません: " + advancementsDir.getAbsolutePath());
             return;
         }
 
         // JSONファイル一覧を取得
         var jsonFiles = getJsonFiles(advancementsDir);
-        if (jsonFiles.length == 0) {
-            sender.sendMessage("§eadvancements ディレクトリにJSONファイルが見つかりませんでした");
+        if (jsonFiles == null || jsonFiles.length == 0) {
+            sendMessage(sender, "§eadvancements ディレクトリにJSONファイルが見つかりませんでした");
             return;
         }
-
-        // インポート処理開始
-        sender.sendMessage("§b=== 実績データインポート開始 ===");
-        sender.sendMessage("§7見つかったファイル数: " + jsonFiles.length);
+        sendMessage(sender, "§7見つかったファイル数: " + jsonFiles.length);
 
         // 各ファイルを処理して結果を表示
-        var statistics = processFiles(jsonFiles, sender);
-        sender.sendMessage(statistics.generateReport());
+        var statistics = processFiles(jsonFiles, full, sender);
+        sendMessage(sender, statistics.generateReport());
     }
 
     /**
      * 実績ファイルが格納されているディレクトリを取得する
-     * 
+     *
      * @return advancementsディレクトリ
      */
     private File getAdvancementsDirectory() {
@@ -62,6 +118,15 @@ public class AdvancementImporter {
         return new File(worldsDir, "advancements");
     }
 
+    /**
+     * サーバーのプレイヤー名キャッシュファイルを取得する
+     *
+     * @return usercache.json
+     */
+    private File getUserCacheFile() {
+        return new File("usercache.json");
+    }
+
     /**
      * ディレクトリ内のJSONファイル一覧を取得する
      */
@@ -70,72 +135,247 @@ public class AdvancementImporter {
     }
 
     /**
-     * 複数のJSONファイルを順次処理する
+     * 複数のJSONファイルを解析スレッドで並列に解析し、このスレッドでまとめて書き込む
+     * 前回のインポートからサイズと更新日時が変わっていないファイルは開かずに読み飛ばす
      * 進行状況を定期的に報告し、統計情報を集計する
      */
-    private ImportStatistics processFiles(File[] jsonFiles, CommandSender sender) {
+    private ImportStatistics processFiles(File[] jsonFiles, boolean full, CommandSender sender) throws InterruptedException {
         var statistics = new ImportStatistics();
-        var totalFiles = jsonFiles.length;
-
-        for (var i = 0; i < totalFiles; i++) {
-            var jsonFile = jsonFiles[i];
-            
-            // 10ファイルごとに進捗を報告
-            if (i % 10 == 0) {
-                sender.sendMessage("§7処理中... " + (i + 1) + "/" + totalFiles);
+        var start = System.nanoTime();
+        var batchSize = Math.max(1, app.getConfig().getInt("writer.batchSize", 500));
+
+        // 前回のインポートから変更されたファイルだけを対象にする
+        var manifest = full ? Map.<String, ImportManifestRepository.ManifestEntry>of() : loadManifest();
+        var targetFiles = new ArrayList<File>(jsonFiles.length);
+        for (var jsonFile : jsonFiles) {
+            var previous = manifest.get(jsonFile.getName());
+            if (previous != null && previous.matchesMetadata(jsonFile.length(), jsonFile.lastModified())) {
+                statistics.unchangedFiles++;
+                continue;
+            }
+            targetFiles.add(jsonFile);
+        }
+        var totalFiles = targetFiles.size();
+        if (statistics.unchangedFiles > 0) {
+            sendMessage(sender, "§7前回から変更の無いファイル: " + statistics.unchangedFiles + " (変更されたファイル: " + totalFiles + ")");
+        }
+
+        // プレイヤー名はファイルごとに検索せず、最初にまとめて読み込む
+        var nameResolver = totalFiles > 0 ? PlayerNameResolver.load(rankingManager, getUserCacheFile()) : null;
+        var jsonProcessor = new JsonFileProcessor(nameResolver);
+
+        // 解析ステージ: 解析結果を件数制限付きのキューに流す
+        BlockingQueue<ParsedFile> parsed = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        var parsers = createParserPool();
+        try {
+            var submittedFiles = 0;
+            for (var jsonFile : targetFiles) {
+                var previous = manifest.get(jsonFile.getName());
+                try {
+                    parsers.execute(() -> {
+                        ParsedFile parsedFile = null;
+                        try {
+                            parsedFile = parse(jsonProcessor, jsonFile, previous);
+                        } finally {
+                            // Errorで中断された場合もエラーとして結果を返し、書き込みステージが結果を待ち続けないようにする
+                            if (parsedFile == null) {
+                                logger.severe("JSONファイルの処理が中断されました: " + jsonFile.getName());
+                                parsedFile = new ParsedFile(JsonFileProcessor.ProcessResult.error("処理の中断"), null);
+                            }
+                            try {
+                                parsed.put(parsedFile);
+                            } catch (InterruptedException e) {
+                                // インポートの中断
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    });
+                    submittedFiles++;
+                } catch (RejectedExecutionException e) {
+                    // 解析されないファイルの結果は待たない
+                    logger.log(Level.SEVERE, "JSONファイルの解析を開始できませんでした: " + jsonFile.getName(), e);
+                    statistics.errors++;
+                }
+            }
+
+            // 書き込みステージ: 解析結果をまとめて書き込む
+            var batch = new ArrayList<AdvancementWriteQueue.PendingRecord>(batchSize);
+            var batchManifest = new ArrayList<ImportManifestRepository.ManifestEntry>();
+            var batchPlayers = 0;
+            var lastReport = System.currentTimeMillis();
+            for (var i = 0; i < submittedFiles; i++) {
+                var parsedFile = parsed.take();
+                var parseResult = parsedFile.result();
+                if (parseResult == null) {
+                    // 更新日時だけが変わり、内容は前回と同じ
+                    statistics.unchangedFiles++;
+                    batchManifest.add(parsedFile.manifest());
+                } else {
+                    switch (parseResult.status()) {
+                        case SUCCESS -> {
+                            statistics.processedPlayers++;
+                            batchPlayers++;
+                            for (var advancement : parseResult.advancements()) {
+                                batch.add(AdvancementWriteQueue.PendingRecord.of(
+                                        parseResult.playerUuid(),
+                                        parseResult.playerName(),
+                                        advancement.key(),
+                                        advancement.timestamp()));
+                            }
+                            batchManifest.add(parsedFile.manifest());
+                        }
+                        case SKIPPED -> {
+                            statistics.skippedFiles++;
+                            batchManifest.add(parsedFile.manifest());
+                        }
+                        case ERROR -> statistics.errors++;
+                    }
+                }
+
+                if (batch.size() >= batchSize || batchManifest.size() >= batchSize) {
+                    writeBatch(batch, batchPlayers, batchManifest, statistics);
+                    batchPlayers = 0;
+                }
+
+                // 定期的に進捗を報告
+                var now = System.currentTimeMillis();
+                if (now - lastReport >= PROGRESS_INTERVAL_MILLIS) {
+                    lastReport = now;
+                    sendMessage(sender, "§7処理中... " + (i + 1) + "/" + totalFiles + " (取り込んだ実績数: " + statistics.importedAdvancements + "件)");
+                }
             }
+            writeBatch(batch, batchPlayers, batchManifest, statistics);
+        } finally {
+            parsers.shutdownNow();
+        }
 
-            // JSONファイルを解析
-            var parseResult = jsonProcessor.processJsonFile(jsonFile);
-            processParseResult(parseResult, statistics);
+        statistics.totalFiles = jsonFiles.length;
+        statistics.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        if (nameResolver != null && nameResolver.getMissCount() > 0) {
+            logger.info("対応表に無く個別に検索したプレイヤー名: " + nameResolver.getMissCount() + "人");
         }
 
         return statistics;
     }
 
     /**
-     * JSON解析結果を処理し、統計情報を更新する
-     * 
-     * @param parseResult JSON解析結果
-     * @param statistics 統計情報
+     * 前回までにインポートしたファイルの記録を読み込む
+     * 読み込めなかった場合は全てのファイルを対象にする
+     */
+    private Map<String, ImportManifestRepository.ManifestEntry> loadManifest() {
+        try {
+            return rankingManager.loadImportManifest();
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "インポート済みファイルの記録の読み込みに失敗しました。全てのファイルを読み込みます", e);
+            return Map.of();
+        }
+    }
+
+    /**
+     * 解析スレッドのプールを作成する
      */
-    private void processParseResult(JsonFileProcessor.ProcessResult parseResult, ImportStatistics statistics) {
-        switch (parseResult.status()) {
-            case SUCCESS -> {
-                statistics.processedPlayers++;
-                // データベースに保存して、成功した件数を統計に加算
-                var importedCount = importPlayerAdvancements(parseResult);
-                statistics.importedAdvancements += importedCount;
+    private ExecutorService createParserPool() {
+        var threads = app.getConfig().getInt("importer.parserThreads", 0);
+        if (threads <= 0) {
+            // 書き込みスレッドとサーバーのメインスレッドの分を残す
+            threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+        }
+        var threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            var thread = new Thread(runnable, "AdvancementRanking-Importer-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * JSONファイルを解析する（解析スレッド）
+     * 内容が前回のインポートと同じ場合は解析しない
+     * 前回インポートしたファイルの場合は、記録済みの実績を取り除く
+     * 例外が発生した場合もエラーとして結果を返し、書き込みステージが結果を待ち続けないようにする
+     *
+     * @param jsonProcessor JSONファイル処理クラス
+     * @param jsonFile 解析するファイル
+     * @param previous 前回インポートした時の記録（初めての場合はnull）
+     */
+    private ParsedFile parse(JsonFileProcessor jsonProcessor, File jsonFile, @Nullable ImportManifestRepository.ManifestEntry previous) {
+        try {
+            // 読み込み中に更新された場合に次回読み直すよう、読み込む前の更新日時を記録する
+            var size = jsonFile.length();
+            var modifiedAt = jsonFile.lastModified();
+            var content = Files.readAllBytes(jsonFile.toPath());
+            var manifest = new ImportManifestRepository.ManifestEntry(jsonFile.getName(), size, modifiedAt, sha256(content));
+            if (previous != null && previous.matchesHash(manifest.hash())) {
+                return new ParsedFile(null, manifest);
+            }
+
+            var result = jsonProcessor.processJsonContent(jsonFile.getName(), content);
+            if (previous != null && result.isSuccess()) {
+                var recorded = rankingManager.getCompletedAdvancementKeys(result.playerUuid());
+                var advancements = result.advancements().stream()
+                        .filter(advancement -> !recorded.contains(advancement.key()))
+                        .toList();
+                result = JsonFileProcessor.ProcessResult.success(result.playerUuid(), result.playerName(), advancements);
             }
-            case SKIPPED -> statistics.skippedFiles++;
-            case ERROR -> statistics.errors++;
+            return new ParsedFile(result, manifest);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "JSONファイルの処理中にエラーが発生: " + jsonFile.getName(), e);
+            return new ParsedFile(JsonFileProcessor.ProcessResult.error("処理エラー: " + e.getMessage()), null);
         }
     }
 
     /**
-     * プレイヤーの実績データをデータベースに保存する
-     * 
-     * @param parseResult JSON解析結果
-     * @return 正常に保存された実績の数
+     * SHA-256ハッシュを計算する
      */
-    private int importPlayerAdvancements(JsonFileProcessor.ProcessResult parseResult) {
-        var importedCount = 0;
-        
-        // 解析された各実績をデータベースに保存
-        for (var advancement : parseResult.advancements()) {
-            try {
-                rankingManager.recordAdvancementProgressData(
-                    parseResult.playerUuid(), 
-                    parseResult.playerName(), 
-                    advancement.key(), 
-                    advancement.timestamp()
-                );
-                importedCount++;
-            } catch (Exception e) {
-                logger.log(Level.WARNING, "実績データの保存に失敗: " + advancement.key(), e);
+    private static byte[] sha256(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 溜まった実績データをまとめてデータベースに保存し、統計情報を更新する
+     * 保存に成功した場合のみ、ファイルをインポート済みとして記録する
+     *
+     * @param batch 保存する実績データ（保存後に空になる）
+     * @param players 含まれるプレイヤー数
+     * @param manifest インポート済みとして記録するファイル（保存後に空になる）
+     * @param statistics 統計情報
+     */
+    private void writeBatch(List<AdvancementWriteQueue.PendingRecord> batch, int players,
+                            List<ImportManifestRepository.ManifestEntry> manifest, ImportStatistics statistics) {
+        try {
+            if (!batch.isEmpty()) {
+                rankingManager.recordAdvancementProgressDataBatch(batch);
+                statistics.importedAdvancements += batch.size();
             }
+            rankingManager.saveImportManifest(manifest);
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "実績データの保存に失敗 (" + batch.size() + "件)", e);
+            statistics.errors += players;
         }
-        
-        return importedCount;
+        batch.clear();
+        manifest.clear();
+    }
+
+    /**
+     * コマンド実行者にメインスレッドでメッセージを送信する
+     */
+    private void sendMessage(CommandSender sender, String message) {
+        if (!app.isEnabled()) {
+            return;
+        }
+        Bukkit.getScheduler().runTask(app, () -> sender.sendMessage(message));
+    }
+
+    /**
+     * 解析したファイル
+     *
+     * @param result   解析結果（内容が前回のインポートと同じ場合はnull）
+     * @param manifest インポート済みとして記録する情報（読み込めなかった場合はnull）
+     */
+    private record ParsedFile(@Nullable JsonFileProcessor.ProcessResult result, @Nullable ImportManifestRepository.ManifestEntry manifest) {
     }
-}
\ No newline at end of file
+}
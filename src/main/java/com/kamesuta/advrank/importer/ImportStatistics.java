@@ -14,9 +14,26 @@ public class ImportStatistics {
     /** スキップしたファイル数 */
     public int skippedFiles = 0;
     
+    /** 前回のインポートから変更が無く読み飛ばしたファイル数 */
+    public int unchangedFiles = 0;
+    
     /** 処理エラー数 */
     public int errors = 0;
     
+    /** 処理したファイル数 */
+    public int totalFiles = 0;
+    
+    /** 処理時間（ミリ秒） */
+    public long elapsedMillis = 0;
+    
+    /**
+     * 1秒あたりの処理ファイル数を計算する
+     * インポート処理の性能の比較に使用する
+     */
+    public double getFilesPerSecond() {
+        return elapsedMillis > 0 ? totalFiles * 1000.0 / elapsedMillis : 0;
+    }
+    
     /**
      * インポート結果レポートを生成する
      * 
@@ -28,7 +45,10 @@ public class ImportStatistics {
             §a処理したプレイヤー数: §f%d人
             §a取り込んだ実績数: §f%d件
             §eスキップしたファイル数: §f%d件
+            §7変更の無かったファイル数: §f%d件
             §c処理エラー数: §f%d件
-            """.formatted(processedPlayers, importedAdvancements, skippedFiles, errors);
+            §7処理時間: §f%.1f秒 (%.1fファイル/秒)
+            """.formatted(processedPlayers, importedAdvancements, skippedFiles, unchangedFiles, errors,
+                elapsedMillis / 1000.0, getFilesPerSecond());
     }
 }
\ No newline at end of file
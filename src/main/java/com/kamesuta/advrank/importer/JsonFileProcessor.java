@@ -1,17 +1,21 @@
 package com.kamesuta.advrank.importer;
 
-import com.google.gson.Gson;
-import com.kamesuta.advrank.data.AdvancementData;
-import java.util.ArrayList;
-import java.util.List;
-import org.bukkit.Bukkit;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.sql.Timestamp;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -20,11 +24,38 @@ import java.util.logging.Logger;
  * JSONファイル処理クラス
  * プレイヤーの実績JSONファイルを解析し、構造化されたデータに変換する
  * データベース操作は行わず、純粋にファイル解析のみを担当
+ * <p>
+ * ファイルは先頭から順に読み、不要な実績（レシピ実績や未達成の実績）はオブジェクトを作らずに読み飛ばす
+ * 状態を持たないため、複数のスレッドから同時に使用できる
+ *
+ * <pre>
+ * JSON構造:
+ * {
+ *   "minecraft:story/mine_stone": {
+ *     "criteria": {
+ *       "get_stone": "2025-08-08 17:37:05 +0900"
+ *     },
+ *     "done": true
+ *   },
+ *   "DataVersion": 123
+ * }
+ * </pre>
  */
 public class JsonFileProcessor {
     private static final Logger logger = Logger.getLogger(JsonFileProcessor.class.getName());
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss zzz");
-    private final Gson gson = new Gson();
+    /**
+     * 達成日時の形式（例: 2025-08-08 17:37:05 +0900）
+     */
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss Z");
+
+    private final PlayerNameResolver nameResolver;
+
+    /**
+     * @param nameResolver プレイヤー名解決クラス
+     */
+    public JsonFileProcessor(PlayerNameResolver nameResolver) {
+        this.nameResolver = nameResolver;
+    }
     
     /**
      * JSONファイルを処理してプレイヤーの実績データを抽出する
@@ -33,18 +64,36 @@ public class JsonFileProcessor {
      * @return 処理結果（成功時は実績データ、失敗時はエラー情報）
      */
     public ProcessResult processJsonFile(File jsonFile) {
-        var playerUuid = extractUuidFromFilename(jsonFile.getName());
+        try {
+            return processJsonContent(jsonFile.getName(), Files.readAllBytes(jsonFile.toPath()));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "JSONファイルの読み取り中にエラーが発生: " + jsonFile.getName(), e);
+            return ProcessResult.error("ファイル読み取りエラー: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 読み込み済みのJSONファイルの内容からプレイヤーの実績データを抽出する
+     *
+     * @param fileName JSONファイル名（UUID.json形式）
+     * @param content  ファイルの内容
+     * @return 処理結果（成功時は実績データ、失敗時はエラー情報）
+     */
+    public ProcessResult processJsonContent(String fileName, byte[] content) {
+        var playerUuid = extractUuidFromFilename(fileName);
         if (playerUuid == null) {
-            return ProcessResult.skipped("無効なUUID形式のファイル名: " + jsonFile.getName());
+            return ProcessResult.skipped("無効なUUID形式のファイル名: " + fileName);
         }
         
         var playerName = getPlayerName(playerUuid);
         
-        try (var reader = new FileReader(jsonFile)) {
+        try (var reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8))) {
             return processAdvancementData(reader, playerUuid, playerName);
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, "JSONファイルの読み取り中にエラーが発生: " + jsonFile.getName(), e);
-            return ProcessResult.error("ファイル読み取りエラー: " + e.getMessage());
+        } catch (EOFException e) {
+            return ProcessResult.skipped("JSONファイルが無効または空です");
+        } catch (IOException | IllegalStateException e) {
+            logger.log(Level.SEVERE, "JSON解析エラー: " + fileName, e);
+            return ProcessResult.error("JSON解析エラー: " + e.getMessage());
         }
     }
     
@@ -72,62 +121,99 @@ public class JsonFileProcessor {
      * プレイヤーのUUIDから名前を取得する
      */
     private String getPlayerName(UUID playerUuid) {
-        var offlinePlayer = Bukkit.getOfflinePlayer(playerUuid);
-        var playerName = offlinePlayer.getName();
-        return playerName != null ? playerName : "Unknown";
+        return nameResolver.resolve(playerUuid);
     }
     
     /**
-     * JSONファイルから実績データを解析する
+     * JSONファイルから達成済みの実績を読み取る
      */
-    private ProcessResult processAdvancementData(FileReader reader, UUID playerUuid, String playerName) {
-        try {
-            var advancementData = gson.fromJson(reader, AdvancementData.class);
-            
-            if (advancementData == null || advancementData.isEmpty()) {
-                return ProcessResult.skipped("JSONファイルが無効または空です");
+    private ProcessResult processAdvancementData(JsonReader reader, UUID playerUuid, String playerName) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            return ProcessResult.skipped("JSONファイルが無効または空です");
+        }
+
+        var advancementList = new ArrayList<AdvancementRecord>();
+        var entryCount = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            var advancementKey = reader.nextName();
+            entryCount++;
+
+            // DataVersionなどのメタデータとレシピ実績は読み飛ばす
+            if (advancementKey.equals("DataVersion") || advancementKey.startsWith("minecraft:recipes/")
+                    || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+
+            var latestDate = readLatestCompletionDate(reader);
+            if (latestDate != null) {
+                advancementList.add(new AdvancementRecord(advancementKey, parseCompletionDate(latestDate)));
             }
-            
-            return parsePlayerAdvancements(advancementData, playerUuid, playerName);
-            
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "JSON解析エラー", e);
-            return ProcessResult.error("JSON解析エラー: " + e.getMessage());
         }
+        reader.endObject();
+
+        if (entryCount == 0) {
+            return ProcessResult.skipped("JSONファイルが無効または空です");
+        }
+        return ProcessResult.success(playerUuid, playerName, advancementList);
     }
-    
+
     /**
-     * プレイヤーの実績データを解析してリストに変換する
+     * 1つの実績の進捗を読み取り、達成済みであれば最新の基準の達成日時を返す
+     * 基準の日時は同じ形式のため、文字列のまま比較する
+     *
+     * @return 最新の達成日時文字列（未達成の場合はnull、達成済みで日時が無い場合は空文字）
      */
-    private ProcessResult parsePlayerAdvancements(AdvancementData advancementData, UUID playerUuid, String playerName) {
-        var completedAdvancements = advancementData.getCompletedAdvancements(gson);
-        var advancementList = new ArrayList<AdvancementRecord>();
-        
-        for (var entry : completedAdvancements.entrySet()) {
-            var advancementKey = entry.getKey();
-            var progress = entry.getValue();
-            
-            var timestamp = parseLatestCompletionDate(progress);
-            advancementList.add(new AdvancementRecord(advancementKey, timestamp));
+    private String readLatestCompletionDate(JsonReader reader) throws IOException {
+        var done = false;
+        String latestDate = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            var name = reader.nextName();
+            if (name.equals("done") && reader.peek() == JsonToken.BOOLEAN) {
+                done = reader.nextBoolean();
+            } else if (name.equals("criteria") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    reader.nextName();
+                    if (reader.peek() != JsonToken.STRING) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    var date = reader.nextString();
+                    if (latestDate == null || date.compareTo(latestDate) > 0) {
+                        latestDate = date;
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
         }
-        
-        return ProcessResult.success(playerUuid, playerName, advancementList);
+        reader.endObject();
+
+        if (!done) {
+            return null;
+        }
+        return latestDate != null ? latestDate : "";
     }
     
     /**
-     * 実績の最新達成日時を解析してTimestampに変換する
+     * 達成日時を解析してTimestampに変換する
+     *
+     * @return 達成日時（解析できない場合はnull）
      */
-    private Timestamp parseLatestCompletionDate(AdvancementData.AdvancementProgress progress) {
-        var latestDate = progress.getLatestCriteriaTime();
-        if (latestDate == null) {
+    private Timestamp parseCompletionDate(String date) {
+        if (date.isEmpty()) {
             return null;
         }
         
         try {
-            var date = dateFormat.parse(latestDate);
-            return new Timestamp(date.getTime());
-        } catch (ParseException e) {
-            logger.log(Level.WARNING, "日付の解析に失敗: " + latestDate, e);
+            return Timestamp.from(OffsetDateTime.parse(date, DATE_FORMATTER).toInstant());
+        } catch (DateTimeParseException e) {
+            logger.log(Level.WARNING, "日付の解析に失敗: " + date, e);
             return null;
         }
     }
@@ -0,0 +1,149 @@
+package com.kamesuta.advrank.importer;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.kamesuta.advrank.database.RankingManager;
+import org.bukkit.Bukkit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * インポート用のプレイヤー名解決クラス
+ * ファイルごとにプレイヤーデータを検索しないよう、インポート開始時にUUID → 名前の対応表を1回だけ作成する
+ * 対応表は、データベースのplayerテーブルをサーバーのusercache.json（より新しい名前）で上書きして作成する
+ * 対応表に無いUUIDだけBukkitのAPIで検索する
+ * 複数のスレッドから同時に使用できる
+ */
+public class PlayerNameResolver {
+    private static final Logger logger = Logger.getLogger(PlayerNameResolver.class.getName());
+
+    /**
+     * 名前が分からない場合の名前
+     */
+    private static final String UNKNOWN_NAME = "Unknown";
+
+    /**
+     * UUID → プレイヤー名
+     */
+    private final Map<UUID, String> names;
+    /**
+     * 対応表に無く、個別に検索した回数
+     */
+    private final AtomicInteger missCount = new AtomicInteger();
+
+    private PlayerNameResolver(Map<UUID, String> names) {
+        this.names = new ConcurrentHashMap<>(names);
+    }
+
+    /**
+     * 作成済みの対応表からプレイヤー名解決クラスを作成する
+     * データベースやusercache.jsonを読まずに使う場合（ベンチマークなど）に使用する
+     *
+     * @param names UUID → プレイヤー名の対応表
+     * @return プレイヤー名解決クラス
+     */
+    static PlayerNameResolver of(Map<UUID, String> names) {
+        return new PlayerNameResolver(names);
+    }
+
+    /**
+     * データベースとusercache.jsonからプレイヤー名の対応表を作成する
+     *
+     * @param rankingManager ランキングマネージャー
+     * @param userCacheFile  サーバーのusercache.json
+     * @return プレイヤー名解決クラス
+     */
+    public static PlayerNameResolver load(RankingManager rankingManager, File userCacheFile) {
+        var names = new HashMap<UUID, String>();
+        try {
+            names.putAll(rankingManager.loadAllPlayerNames());
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "プレイヤー名の読み込みに失敗しました", e);
+        }
+        var databaseCount = names.size();
+
+        if (userCacheFile.exists()) {
+            try {
+                readUserCache(userCacheFile, names);
+            } catch (IOException | IllegalStateException e) {
+                logger.log(Level.WARNING, "usercache.jsonの読み込みに失敗しました", e);
+            }
+        }
+
+        logger.info("プレイヤー名を読み込みました (データベース: " + databaseCount + "人, 合計: " + names.size() + "人)");
+        return new PlayerNameResolver(names);
+    }
+
+    /**
+     * usercache.jsonを読み込む
+     * 形式: [{"name": "...", "uuid": "...", "expiresOn": "..."}, ...]
+     */
+    private static void readUserCache(File userCacheFile, Map<UUID, String> names) throws IOException {
+        try (var reader = new JsonReader(Files.newBufferedReader(userCacheFile.toPath(), StandardCharsets.UTF_8))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String name = null;
+                String uuid = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    var field = reader.nextName();
+                    if (field.equals("name") && reader.peek() == JsonToken.STRING) {
+                        name = reader.nextString();
+                    } else if (field.equals("uuid") && reader.peek() == JsonToken.STRING) {
+                        uuid = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+
+                if (name != null && uuid != null) {
+                    try {
+                        names.put(UUID.fromString(uuid), name);
+                    } catch (IllegalArgumentException e) {
+                        // 無効なUUIDは無視
+                    }
+                }
+            }
+            reader.endArray();
+        }
+    }
+
+    /**
+     * プレイヤー名を取得する
+     * 対応表に無い場合はBukkitのAPIで検索する
+     *
+     * @param uuid プレイヤーのUUID
+     * @return プレイヤー名（見つからない場合は"Unknown"）
+     */
+    public String resolve(UUID uuid) {
+        var name = names.get(uuid);
+        if (name != null) {
+            return name;
+        }
+
+        missCount.incrementAndGet();
+        var playerName = Bukkit.getOfflinePlayer(uuid).getName();
+        name = playerName != null ? playerName : UNKNOWN_NAME;
+        names.put(uuid, name);
+        return name;
+    }
+
+    /**
+     * 対応表に無く、個別に検索した回数を取得する
+     */
+    public int getMissCount() {
+        return missCount.get();
+    }
+}
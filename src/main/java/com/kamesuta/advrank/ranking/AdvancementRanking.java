@@ -0,0 +1,272 @@
+package com.kamesuta.advrank.ranking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 1つの実績の達成記録を(達成日時, プレイヤーID)順に並べて保持するランキング
+ * 順位はSQLのRANK()と同じく、同じ日時に達成したプレイヤーは同じ順位とする
+ * 達成者数はO(1)、プレイヤーの順位と任意の位置の取得はO(log n)で求められる
+ * 最新の達成の追加は末尾に追加するだけで済む
+ * 過去の日時の達成（インポートなど）は後ろをずらして挿入するため、多数ある場合は{@link #addAll}でまとめて併合する
+ * 全てのメソッドはスレッドセーフ
+ */
+public class AdvancementRanking {
+    /**
+     * 達成日時（エポックミリ秒、昇順）
+     */
+    private long[] timestamps = new long[8];
+    /**
+     * プレイヤーID（timestampsと同じ並び）
+     */
+    private int[] playerIds = new int[8];
+    /**
+     * 達成者数
+     */
+    private int size = 0;
+    /**
+     * プレイヤーID → 達成日時
+     */
+    private final PlayerTimestampMap playerTimestamps = new PlayerTimestampMap();
+
+    /**
+     * 達成記録を追加する
+     * 既に記録があるプレイヤーは追加しない（データベースのINSERT IGNOREと同じ動作）
+     * 日時が過去のもの（インポートなど）も正しい位置に挿入される
+     *
+     * @param playerId  プレイヤーID
+     * @param timestamp 達成日時（エポックミリ秒）
+     * @return 追加された場合true
+     */
+    public synchronized boolean add(int playerId, long timestamp) {
+        if (playerTimestamps.containsKey(playerId)) {
+            return false;
+        }
+
+        var pos = insertionPoint(timestamp, playerId);
+        ensureCapacity(size + 1);
+        if (pos < size) {
+            // 過去の日時の記録は後ろをずらして挿入する
+            System.arraycopy(timestamps, pos, timestamps, pos + 1, size - pos);
+            System.arraycopy(playerIds, pos, playerIds, pos + 1, size - pos);
+        }
+        timestamps[pos] = timestamp;
+        playerIds[pos] = playerId;
+        size++;
+        playerTimestamps.put(playerId, timestamp);
+        return true;
+    }
+
+    /**
+     * 達成記録をまとめて追加する
+     * 追加する記録を並べ替えてから、既存の記録と後ろから1回で併合する
+     * 過去の日時の記録がk件あっても、後ろをずらすのは1回で済む（O(n + k log k)）
+     * 既に記録があるプレイヤーと、同じプレイヤーの2件目以降は追加しない
+     *
+     * @param newPlayerIds  プレイヤーID
+     * @param newTimestamps 達成日時（エポックミリ秒、newPlayerIdsと同じ並び）
+     * @return 追加した件数
+     */
+    public synchronized int addAll(int[] newPlayerIds, long[] newTimestamps) {
+        // 追加する記録を選ぶ
+        var count = 0;
+        var addPlayerIds = new int[newPlayerIds.length];
+        var addTimestamps = new long[newPlayerIds.length];
+        for (var i = 0; i < newPlayerIds.length; i++) {
+            if (playerTimestamps.containsKey(newPlayerIds[i])) continue;
+            playerTimestamps.put(newPlayerIds[i], newTimestamps[i]);
+            addPlayerIds[count] = newPlayerIds[i];
+            addTimestamps[count] = newTimestamps[i];
+            count++;
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        // (日時, プレイヤーID)順に並べ替える
+        var order = new Integer[count];
+        for (var i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            var result = Long.compare(addTimestamps[a], addTimestamps[b]);
+            return result != 0 ? result : Integer.compare(addPlayerIds[a], addPlayerIds[b]);
+        });
+
+        // 大きい方から後ろに詰めて併合する（末尾より後の記録だけであれば、既存の記録は動かない）
+        ensureCapacity(size + count);
+        var i = size - 1;
+        var k = size + count - 1;
+        for (var j = count - 1; j >= 0; j--) {
+            var timestamp = addTimestamps[order[j]];
+            var playerId = addPlayerIds[order[j]];
+            while (i >= 0 && compare(timestamp, playerId, i) < 0) {
+                timestamps[k] = timestamps[i];
+                playerIds[k] = playerIds[i];
+                i--;
+                k--;
+            }
+            timestamps[k] = timestamp;
+            playerIds[k] = playerId;
+            k--;
+        }
+        size += count;
+        return count;
+    }
+
+    /**
+     * 指定した件数を保持できるよう配列を広げる
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > timestamps.length) {
+            var length = Math.max(capacity, timestamps.length * 2);
+            timestamps = Arrays.copyOf(timestamps, length);
+            playerIds = Arrays.copyOf(playerIds, length);
+        }
+    }
+
+    /**
+     * 達成者数を取得する
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * プレイヤーが達成済みか確認する
+     *
+     * @param playerId プレイヤーID
+     */
+    public synchronized boolean contains(int playerId) {
+        return playerTimestamps.containsKey(playerId);
+    }
+
+    /**
+     * プレイヤーの順位を取得する
+     *
+     * @param playerId プレイヤーID
+     * @return 順位（1から開始、未達成の場合は-1）
+     */
+    public synchronized int rankOf(int playerId) {
+        var timestamp = playerTimestamps.get(playerId);
+        if (timestamp == PlayerTimestampMap.NO_VALUE) {
+            return -1;
+        }
+        return countBefore(timestamp) + 1;
+    }
+
+    /**
+     * プレイヤーの達成記録を取得する
+     *
+     * @param playerId プレイヤーID
+     * @return 達成記録（未達成の場合はnull）
+     */
+    public synchronized Entry find(int playerId) {
+        var timestamp = playerTimestamps.get(playerId);
+        if (timestamp == PlayerTimestampMap.NO_VALUE) {
+            return null;
+        }
+        return new Entry(playerId, timestamp, countBefore(timestamp) + 1);
+    }
+
+    /**
+     * 上位の達成記録を取得する
+     *
+     * @param limit 取得数
+     * @return 達成日時の早い順の達成記録
+     */
+    public synchronized List<Entry> top(int limit) {
+        return range(0, limit);
+    }
+
+    /**
+     * 下位（直近）の達成記録を取得する
+     *
+     * @param limit 取得数
+     * @return 達成日時の早い順の達成記録
+     */
+    public synchronized List<Entry> bottom(int limit) {
+        return range(size - limit, limit);
+    }
+
+    /**
+     * 指定位置から達成記録を取得する
+     *
+     * @param offset 開始位置（0から開始）
+     * @param limit  取得数
+     * @return 達成日時の早い順の達成記録
+     */
+    public synchronized List<Entry> range(int offset, int limit) {
+        var from = Math.max(0, offset);
+        var to = Math.min(size, Math.max(0, offset) + Math.max(0, limit));
+        var entries = new ArrayList<Entry>(Math.max(0, to - from));
+        var rank = 0;
+        for (var i = from; i < to; i++) {
+            if (i == from) {
+                // 最初の1件だけ二分探索で順位を求める
+                rank = countBefore(timestamps[i]) + 1;
+            } else if (timestamps[i] != timestamps[i - 1]) {
+                // 日時が変わったら、前にいる人数+1が順位
+                rank = i + 1;
+            }
+            entries.add(new Entry(playerIds[i], timestamps[i], rank));
+        }
+        return entries;
+    }
+
+    /**
+     * 指定した日時より前に達成したプレイヤー数を求める
+     */
+    private int countBefore(long timestamp) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            var mid = (lo + hi) >>> 1;
+            if (timestamps[mid] < timestamp) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * (日時, プレイヤーID)の挿入位置を求める
+     */
+    private int insertionPoint(long timestamp, int playerId) {
+        // 通常は最新の達成なので末尾に追加する
+        if (size == 0 || compare(timestamp, playerId, size - 1) > 0) {
+            return size;
+        }
+
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            var mid = (lo + hi) >>> 1;
+            if (compare(timestamp, playerId, mid) > 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * (日時, プレイヤーID)を指定位置の記録と比較する
+     */
+    private int compare(long timestamp, int playerId, int index) {
+        var result = Long.compare(timestamp, timestamps[index]);
+        return result != 0 ? result : Integer.compare(playerId, playerIds[index]);
+    }
+
+    /**
+     * 達成記録
+     *
+     * @param playerId  プレイヤーID
+     * @param timestamp 達成日時（エポックミリ秒）
+     * @param rank      順位
+     */
+    public record Entry(int playerId, long timestamp, int rank) {
+    }
+}
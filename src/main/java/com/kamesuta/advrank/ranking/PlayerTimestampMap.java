@@ -0,0 +1,117 @@
+package com.kamesuta.advrank.ranking;
+
+import java.util.Arrays;
+
+/**
+ * プレイヤーID → 達成日時のハッシュマップ
+ * 達成記録は数百万件になるため、ボクシングを避けて配列で保持する（オープンアドレス法）
+ * スレッドセーフではないため、呼び出し側で排他すること
+ */
+class PlayerTimestampMap {
+    /**
+     * 値が無いことを表す値
+     */
+    static final long NO_VALUE = Long.MIN_VALUE;
+    /**
+     * 空きスロットを表すキー（プレイヤーIDはAUTO_INCREMENTで1から始まるため0は使われない）
+     */
+    private static final int EMPTY = 0;
+
+    private int[] keys = new int[16];
+    private long[] values = newValues(16);
+    private int size = 0;
+
+    /**
+     * 値を取得する
+     *
+     * @param key プレイヤーID
+     * @return 達成日時（存在しない場合は{@link #NO_VALUE}）
+     */
+    long get(int key) {
+        // 空きスロットのキーと一致してしまうため探さない
+        if (key == EMPTY) return NO_VALUE;
+        var mask = keys.length - 1;
+        for (var i = hash(key) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == key) return values[i];
+            if (keys[i] == EMPTY) return NO_VALUE;
+        }
+    }
+
+    /**
+     * キーが存在するか確認する
+     */
+    boolean containsKey(int key) {
+        return get(key) != NO_VALUE;
+    }
+
+    /**
+     * 値を設定する
+     *
+     * @param key   プレイヤーID
+     * @param value 達成日時
+     */
+    void put(int key, long value) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("プレイヤーIDに0は使用できません");
+        }
+        // 使用率が1/2を超えたら拡張する
+        if ((size + 1) * 2 > keys.length) {
+            resize();
+        }
+        if (insert(keys, values, key, value)) {
+            size++;
+        }
+    }
+
+    /**
+     * 配列を2倍に拡張する
+     */
+    private void resize() {
+        var newKeys = new int[keys.length * 2];
+        var newValues = newValues(keys.length * 2);
+        for (var i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                insert(newKeys, newValues, keys[i], values[i]);
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+
+    /**
+     * 全てのスロットが値無しの配列を作成する
+     */
+    private static long[] newValues(int length) {
+        var values = new long[length];
+        Arrays.fill(values, NO_VALUE);
+        return values;
+    }
+
+    /**
+     * 配列に挿入する
+     *
+     * @return 新しいキーの場合true
+     */
+    private static boolean insert(int[] keys, long[] values, int key, long value) {
+        var mask = keys.length - 1;
+        for (var i = hash(key) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return false;
+            }
+            if (keys[i] == EMPTY) {
+                keys[i] = key;
+                values[i] = value;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 連番のIDが偏らないようにハッシュを分散させる
+     */
+    private static int hash(int key) {
+        var h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,385 @@
+package com.kamesuta.advrank.ranking;
+
+import org.bukkit.Bukkit;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.kamesuta.advrank.AdvRankingPlugin.app;
+
+/**
+ * SQLで取得したランキングのキャッシュ
+ * (実績ID, クエリの形)をキーとし、有効期限が切れた値や達成記録で無効化された値は、
+ * 猶予期間内であればそのまま返しつつ非同期で読み直す（stale-while-revalidate）
+ * 合計の重み（ランキングの行数）が上限を超えた場合は、アクセス頻度の低いものから破棄する
+ * 他のサーバーでの達成記録では無効化されないため、有効期限までは古い値を返すことがある
+ */
+public class RankingCache {
+    private static final Logger logger = Logger.getLogger(RankingCache.class.getName());
+
+    /**
+     * 上限を超えたときに、上限のこの割合まで破棄する
+     * 上限付近で追加のたびに破棄の処理が走らないよう、余裕を持たせる
+     */
+    private static final double EVICTION_TARGET_RATIO = 0.9;
+
+    /**
+     * キャッシュから値を読み込む処理
+     */
+    @FunctionalInterface
+    public interface Loader<V> {
+        V load() throws SQLException;
+    }
+
+    /**
+     * 複数の実績の値をまとめて読み込む処理
+     * 指定した全ての実績IDの値を返すこと
+     */
+    @FunctionalInterface
+    public interface BatchLoader<V> {
+        Map<Integer, V> load(Collection<Integer> advancementIds) throws SQLException;
+    }
+
+    /**
+     * 有効期限（ミリ秒）
+     */
+    private final long ttlMillis;
+    /**
+     * 有効期限が切れた後も、読み直している間に古い値を返す猶予（ミリ秒）
+     */
+    private final long staleMillis;
+    /**
+     * 合計の重みの上限
+     */
+    private final long maxWeight;
+
+    private final Map<Key, CacheEntry> entries = new ConcurrentHashMap<>();
+    /**
+     * 実績ID → 無効化した回数
+     * 読み込み時の回数と異なる値は無効化されている
+     */
+    private final Map<Integer, Long> versions = new ConcurrentHashMap<>();
+    /**
+     * キーのアクセス頻度（破棄するものを選ぶのに使用する）
+     */
+    private final FrequencySketch sketch;
+    private final AtomicLong totalWeight = new AtomicLong();
+
+    // 統計情報
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong staleCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    /**
+     * @param ttlMillis   有効期限（ミリ秒）
+     * @param staleMillis 有効期限が切れた後も古い値を返す猶予（ミリ秒）
+     * @param maxWeight   合計の重みの上限（ランキングの行数）
+     */
+    public RankingCache(long ttlMillis, long staleMillis, long maxWeight) {
+        this.ttlMillis = ttlMillis;
+        this.staleMillis = staleMillis;
+        this.maxWeight = maxWeight;
+        this.sketch = new FrequencySketch((int) Math.min(maxWeight, 1 << 20));
+    }
+
+    /**
+     * キャッシュから値を取得する
+     * キャッシュにない場合や猶予期間も過ぎている場合は、呼び出し元のスレッドで読み込む
+     *
+     * @param advancementId 実績ID（この実績の達成記録で無効化される）
+     * @param query         クエリの形（equalsで比較できる値）
+     * @param weigher       値の重み（ランキングの行数）
+     * @param loader        値を読み込む処理
+     * @return 値
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V get(int advancementId, Object query, ToIntFunction<V> weigher, Loader<V> loader) throws SQLException {
+        var key = new Key(advancementId, query);
+        var entry = lookup(key, weigher, loader);
+        if (entry != null) {
+            return (V) entry.value;
+        }
+
+        missCount.incrementAndGet();
+        var version = version(advancementId);
+        var loadedAt = System.currentTimeMillis();
+        var value = loader.load();
+        put(key, value, weigher, loadedAt, version);
+        return value;
+    }
+
+    /**
+     * 複数の実績の値をまとめて取得する
+     * キャッシュにない実績だけを1回の読み込みで取得する
+     *
+     * @param advancementIds 実績ID
+     * @param query          クエリの形（equalsで比較できる値）
+     * @param weigher        値の重み（ランキングの行数）
+     * @param loader         値をまとめて読み込む処理
+     * @return 実績ID → 値
+     */
+    @SuppressWarnings("unchecked")
+    public <V> Map<Integer, V> getAll(Collection<Integer> advancementIds, Object query, ToIntFunction<V> weigher, BatchLoader<V> loader) throws SQLException {
+        var result = new HashMap<Integer, V>();
+        // 読み込み中に無効化された場合に古い値とわかるよう、先に回数を取得する
+        var missing = new HashMap<Integer, Long>();
+        for (var advancementId : advancementIds) {
+            var entry = lookup(new Key(advancementId, query), weigher, () -> loader.load(List.of(advancementId)).get(advancementId));
+            if (entry != null) {
+                result.put(advancementId, (V) entry.value);
+            } else {
+                missing.put(advancementId, version(advancementId));
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        missCount.addAndGet(missing.size());
+        var loadedAt = System.currentTimeMillis();
+        var loaded = loader.load(missing.keySet());
+        missing.forEach((advancementId, version) -> {
+            var value = loaded.get(advancementId);
+            put(new Key(advancementId, query), value, weigher, loadedAt, version);
+            result.put(advancementId, value);
+        });
+        return result;
+    }
+
+    /**
+     * キャッシュから返せる値を探す
+     * 古い値を返す場合は非同期での読み直しを予約する
+     *
+     * @return 返せる値（ない場合はnull）
+     */
+    private <V> @Nullable CacheEntry lookup(Key key, ToIntFunction<V> weigher, Loader<V> loader) {
+        sketch.increment(key.hashCode());
+
+        var entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        var age = System.currentTimeMillis() - entry.loadedAt;
+        if (age < ttlMillis && entry.version == version(key.advancementId())) {
+            hitCount.incrementAndGet();
+            return entry;
+        }
+        if (age < ttlMillis + staleMillis) {
+            staleCount.incrementAndGet();
+            refresh(key, entry, weigher, loader);
+            return entry;
+        }
+        return null;
+    }
+
+    /**
+     * 実績のキャッシュを無効化する
+     * 無効化した値は猶予期間内であれば、読み直すまで返し続ける
+     *
+     * @param advancementId 実績ID
+     */
+    public void invalidate(int advancementId) {
+        versions.merge(advancementId, 1L, Long::sum);
+        invalidationCount.incrementAndGet();
+    }
+
+    /**
+     * 実績の現在の無効化回数
+     */
+    private long version(int advancementId) {
+        return versions.getOrDefault(advancementId, 0L);
+    }
+
+    /**
+     * 古い値を非同期で読み直す
+     * 同じ値の読み直しは同時に1つだけ行う
+     */
+    private <V> void refresh(Key key, CacheEntry entry, ToIntFunction<V> weigher, Loader<V> loader) {
+        if (!app.isEnabled() || !entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        Bukkit.getScheduler().runTaskAsynchronously(app, () -> {
+            try {
+                var version = version(key.advancementId());
+                var loadedAt = System.currentTimeMillis();
+                put(key, loader.load(), weigher, loadedAt, version);
+            } catch (SQLException e) {
+                logger.log(Level.WARNING, "ランキングキャッシュの読み直しに失敗しました", e);
+                // 次のアクセスで再度読み直す
+                entry.refreshing.set(false);
+            }
+        });
+    }
+
+    /**
+     * キャッシュに追加し、上限を超えた場合は破棄する
+     */
+    private <V> void put(Key key, V value, ToIntFunction<V> weigher, long loadedAt, long version) {
+        var entry = new CacheEntry(value, Math.max(1, weigher.applyAsInt(value)), loadedAt, version);
+        var old = entries.put(key, entry);
+        totalWeight.addAndGet(entry.weight - (old != null ? old.weight : 0));
+        if (totalWeight.get() > maxWeight) {
+            evict();
+        }
+    }
+
+    /**
+     * アクセス頻度の低いものから、上限の一定割合まで破棄する
+     * 頻度が同じ場合は古いものから破棄する
+     * 追加したばかりの値も対象にするため、一度しか使われない値が頻繁に使われる値を押し出すことはない
+     */
+    private synchronized void evict() {
+        var target = (long) (maxWeight * EVICTION_TARGET_RATIO);
+        if (totalWeight.get() <= target) {
+            return;
+        }
+
+        var candidates = new ArrayList<>(entries.entrySet());
+        candidates.sort(Comparator.<Map.Entry<Key, CacheEntry>>comparingInt(e -> sketch.frequency(e.getKey().hashCode()))
+                .thenComparingLong(e -> e.getValue().loadedAt));
+        for (var candidate : candidates) {
+            if (totalWeight.get() <= target) {
+                break;
+            }
+            if (entries.remove(candidate.getKey(), candidate.getValue())) {
+                totalWeight.addAndGet(-candidate.getValue().weight);
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * キャッシュの統計レポートを生成する
+     */
+    public String generateReport() {
+        long hits = hitCount.get();
+        long stale = staleCount.get();
+        long misses = missCount.get();
+        long requests = hits + stale + misses;
+        double hitRate = requests > 0 ? (hits + stale) * 100.0 / requests : 0;
+        return """
+            §aランキングキャッシュ: §f%d件 (重み: %d/%d)
+            §aヒット: §f%d回 §e古い値で応答: §f%d回 §cミス: §f%d回 §a(ヒット率: %.1f%%)
+            §a破棄: §f%d件 §a無効化: §f%d回""".formatted(
+                entries.size(), totalWeight.get(), maxWeight,
+                hits, stale, misses, hitRate,
+                evictionCount.get(), invalidationCount.get());
+    }
+
+    /**
+     * キャッシュのキー
+     *
+     * @param advancementId 実績ID
+     * @param query         クエリの形
+     */
+    private record Key(int advancementId, Object query) {
+    }
+
+    /**
+     * キャッシュした値
+     */
+    private static final class CacheEntry {
+        private final Object value;
+        private final int weight;
+        private final long loadedAt;
+        private final long version;
+        /**
+         * 非同期で読み直し中か
+         */
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private CacheEntry(Object value, int weight, long loadedAt, long version) {
+            this.value = value;
+            this.weight = weight;
+            this.loadedAt = loadedAt;
+            this.version = version;
+        }
+    }
+
+    /**
+     * キーのアクセス頻度を少ないメモリで数える（Count-Min Sketch）
+     * ハッシュが衝突すると多めに数えるが、少なく数えることはない
+     * 一定回数数えるごとに全体を半分にし、最近のアクセスを重視する
+     */
+    private static final class FrequencySketch {
+        /**
+         * 1つのキーを数える行の数
+         */
+        private static final int DEPTH = 4;
+        /**
+         * 行ごとにハッシュを混ぜるための値
+         */
+        private static final int[] SEEDS = {0x97cb3127, 0xb7ff5c53, 0x2f0cb9a5, 0x64b1e1a3};
+        /**
+         * 1つのキーの最大の回数
+         */
+        private static final int MAX_COUNT = 15;
+
+        private final int[][] table;
+        private final int mask;
+        /**
+         * 全体を半分にするまでの回数
+         */
+        private final int sampleSize;
+        private int additions;
+
+        private FrequencySketch(int expectedEntries) {
+            var width = Integer.highestOneBit(Math.max(16, expectedEntries) - 1) << 1;
+            this.table = new int[DEPTH][width];
+            this.mask = width - 1;
+            this.sampleSize = width * 10;
+        }
+
+        private synchronized void increment(int hash) {
+            for (var i = 0; i < DEPTH; i++) {
+                var row = table[i];
+                var index = indexOf(hash, i);
+                if (row[index] < MAX_COUNT) {
+                    row[index]++;
+                }
+            }
+            if (++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private synchronized int frequency(int hash) {
+            var frequency = MAX_COUNT;
+            for (var i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency, table[i][indexOf(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private int indexOf(int hash, int row) {
+            var h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        /**
+         * 全ての回数を半分にする
+         */
+        private void reset() {
+            for (var row : table) {
+                for (var i = 0; i < row.length; i++) {
+                    row[i] >>>= 1;
+                }
+            }
+            additions /= 2;
+        }
+    }
+}
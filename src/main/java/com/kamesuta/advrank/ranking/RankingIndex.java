@@ -0,0 +1,311 @@
+package com.kamesuta.advrank.ranking;
+
+import com.kamesuta.advrank.database.DatabaseManager;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.kamesuta.advrank.util.AdvancementUtil.bytesToUuid;
+
+/**
+ * メモリ上のランキングインデックス
+ * 起動時にデータベースから全ての達成記録を読み込み、以降は書き込みに合わせて差分で更新する
+ * 読み込み完了後は、ランキングの取得にSQLを使わない
+ */
+public class RankingIndex {
+    private static final Logger logger = Logger.getLogger(RankingIndex.class.getName());
+
+    /**
+     * 起動時の読み込みで1回に読み込む件数
+     * SQLiteは接続が1つのため、1回の読み込みが終わるたびに接続を返却し、書き込みを挟めるようにする
+     */
+    private static final int LOAD_CHUNK_SIZE = 10000;
+
+    private final DatabaseManager databaseManager;
+
+    /**
+     * 実績ID → ランキング（添字が実績ID）
+     */
+    private volatile AdvancementRanking[] rankings = new AdvancementRanking[0];
+    /**
+     * プレイヤーID → プレイヤー情報（添字がプレイヤーID）
+     */
+    private volatile IndexedPlayer[] players = new IndexedPlayer[0];
+    /**
+     * UUID → プレイヤーID
+     */
+    private final Map<UUID, Integer> playerIds = new ConcurrentHashMap<>();
+    /**
+     * 読み込みが完了したか
+     */
+    private volatile boolean ready = false;
+
+    public RankingIndex(DatabaseManager databaseManager) {
+        this.databaseManager = databaseManager;
+    }
+
+    /**
+     * データベースから全てのプレイヤーと達成記録を読み込む
+     * 読み込み中に追加された記録も失われないよう、読み込みは{@link #addAll}と同じ経路で行う
+     * 接続を長く占有して書き込みを待たせないよう、{@link #LOAD_CHUNK_SIZE}件ごとに接続を返却する
+     */
+    public void load() {
+        var start = System.currentTimeMillis();
+        try {
+            loadPlayers();
+
+            // 達成記録（実績ごとに日時順に読み込むことで、ほとんどが末尾への追加になる）
+            var count = 0;
+            for (var advancementId : loadAdvancementIds()) {
+                count += loadCompletions(advancementId);
+            }
+
+            ready = true;
+            logger.info("ランキングインデックスを読み込みました (" + count + "件, " + (System.currentTimeMillis() - start) + "ms)");
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "ランキングインデックスの読み込みに失敗しました。SQLでランキングを取得します", e);
+        }
+    }
+
+    /**
+     * 全てのプレイヤーをID順に{@link #LOAD_CHUNK_SIZE}件ずつ読み込む
+     */
+    private void loadPlayers() throws SQLException {
+        var lastId = 0;
+        while (true) {
+            var loaded = 0;
+            try (var conn = databaseManager.getConnection(); var pstmt = conn.prepareStatement("""
+                    SELECT id, uuid, name FROM player WHERE id > ? ORDER BY id LIMIT ?;
+                    """)) {
+                pstmt.setInt(1, lastId);
+                pstmt.setInt(2, LOAD_CHUNK_SIZE);
+                var rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    lastId = rs.getInt("id");
+                    registerPlayer(lastId, bytesToUuid(rs.getBytes("uuid")), rs.getString("name"));
+                    loaded++;
+                }
+            }
+            if (loaded < LOAD_CHUNK_SIZE) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 全ての実績IDを読み込む
+     */
+    private List<Integer> loadAdvancementIds() throws SQLException {
+        var advancementIds = new ArrayList<Integer>();
+        try (var conn = databaseManager.getConnection(); var stmt = conn.createStatement()) {
+            var rs = stmt.executeQuery("SELECT id FROM advancement ORDER BY id;");
+            while (rs.next()) {
+                advancementIds.add(rs.getInt(1));
+            }
+        }
+        return advancementIds;
+    }
+
+    /**
+     * 1つの実績の達成記録を(日時, プレイヤーID)順に{@link #LOAD_CHUNK_SIZE}件ずつ読み込む
+     * 前回の最後の行の位置から読み進めるため、件数によらず1回の読み込みは一定の処理量で済む
+     *
+     * @param advancementId 実績ID
+     * @return 読み込んだ件数
+     */
+    private int loadCompletions(int advancementId) throws SQLException {
+        var count = 0;
+        var lastTimestamp = Long.MIN_VALUE;
+        var lastPlayerId = 0;
+        while (true) {
+            var playerIds = new int[LOAD_CHUNK_SIZE];
+            var timestamps = new long[LOAD_CHUNK_SIZE];
+            var loaded = 0;
+            var sql = count == 0
+                    ? """
+                    SELECT player_id, timestamp FROM player_advancement
+                     WHERE advancement_id = ?
+                     ORDER BY timestamp, player_id LIMIT ?;
+                    """
+                    : """
+                    SELECT player_id, timestamp FROM player_advancement
+                     WHERE advancement_id = ? AND (timestamp > ? OR (timestamp = ? AND player_id > ?))
+                     ORDER BY timestamp, player_id LIMIT ?;
+                    """;
+            try (var conn = databaseManager.getConnection(); var pstmt = conn.prepareStatement(sql)) {
+                var parameterIndex = 1;
+                pstmt.setInt(parameterIndex++, advancementId);
+                if (count > 0) {
+                    var timestamp = new Timestamp(lastTimestamp);
+                    pstmt.setTimestamp(parameterIndex++, timestamp);
+                    pstmt.setTimestamp(parameterIndex++, timestamp);
+                    pstmt.setInt(parameterIndex++, lastPlayerId);
+                }
+                pstmt.setInt(parameterIndex, LOAD_CHUNK_SIZE);
+                var rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    playerIds[loaded] = rs.getInt(1);
+                    timestamps[loaded] = rs.getTimestamp(2).getTime();
+                    loaded++;
+                }
+            }
+
+            // 接続を返却してからインデックスに追加する
+            if (loaded > 0) {
+                addAll(advancementId, Arrays.copyOf(playerIds, loaded), Arrays.copyOf(timestamps, loaded));
+                lastTimestamp = timestamps[loaded - 1];
+                lastPlayerId = playerIds[loaded - 1];
+                count += loaded;
+            }
+            if (loaded < LOAD_CHUNK_SIZE) {
+                return count;
+            }
+        }
+    }
+
+    /**
+     * 読み込みが完了しているか
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * プレイヤーを登録する
+     *
+     * @param playerId プレイヤーID
+     * @param uuid     プレイヤーのUUID
+     * @param name     プレイヤー名
+     */
+    public synchronized void registerPlayer(int playerId, UUID uuid, String name) {
+        var array = players;
+        if (playerId >= array.length) {
+            array = Arrays.copyOf(array, Math.max(playerId + 1, array.length * 2));
+        }
+        array[playerId] = new IndexedPlayer(uuid, name);
+        players = array;
+        playerIds.put(uuid, playerId);
+    }
+
+    /**
+     * 達成記録を追加する
+     *
+     * @param advancementId 実績ID
+     * @param playerId      プレイヤーID
+     * @param timestamp     達成日時（エポックミリ秒）
+     */
+    public void add(int advancementId, int playerId, long timestamp) {
+        var array = rankings;
+        var ranking = advancementId < array.length ? array[advancementId] : null;
+        if (ranking == null) {
+            ranking = createRanking(advancementId);
+        }
+        ranking.add(playerId, timestamp);
+    }
+
+    /**
+     * 1つの実績の達成記録をまとめて追加する
+     * インポートなどで過去の日時の記録が多数追加されても、ランキングの併合は1回で済む
+     *
+     * @param advancementId 実績ID
+     * @param playerIds     プレイヤーID
+     * @param timestamps    達成日時（エポックミリ秒、playerIdsと同じ並び）
+     */
+    public void addAll(int advancementId, int[] playerIds, long[] timestamps) {
+        var array = rankings;
+        var ranking = advancementId < array.length ? array[advancementId] : null;
+        if (ranking == null) {
+            ranking = createRanking(advancementId);
+        }
+        ranking.addAll(playerIds, timestamps);
+    }
+
+    /**
+     * 実績のランキングを作成する
+     */
+    private synchronized AdvancementRanking createRanking(int advancementId) {
+        var array = rankings;
+        if (advancementId >= array.length) {
+            array = Arrays.copyOf(array, Math.max(advancementId + 1, array.length * 2));
+        }
+        if (array[advancementId] == null) {
+            array[advancementId] = new AdvancementRanking();
+        }
+        rankings = array;
+        return array[advancementId];
+    }
+
+    /**
+     * 実績のランキングを取得する
+     *
+     * @param advancementId 実績ID
+     * @return ランキング（達成者がいない場合はnull）
+     */
+    public @Nullable AdvancementRanking getRanking(int advancementId) {
+        var array = rankings;
+        return advancementId >= 0 && advancementId < array.length ? array[advancementId] : null;
+    }
+
+    /**
+     * プレイヤーが達成済みの実績IDを取得する
+     *
+     * @param playerId プレイヤーID
+     * @return 達成済みの実績ID
+     */
+    public List<Integer> getCompletedAdvancementIds(int playerId) {
+        var array = rankings;
+        var advancementIds = new ArrayList<Integer>();
+        for (var advancementId = 0; advancementId < array.length; advancementId++) {
+            if (array[advancementId] != null && array[advancementId].contains(playerId)) {
+                advancementIds.add(advancementId);
+            }
+        }
+        return advancementIds;
+    }
+
+    /**
+     * 登録されているプレイヤー数を取得する
+     */
+    public int getPlayerCount() {
+        return playerIds.size();
+    }
+
+    /**
+     * UUIDからプレイヤーIDを取得する
+     *
+     * @param uuid プレイヤーのUUID
+     * @return プレイヤーID（登録されていない場合は-1）
+     */
+    public int getPlayerId(UUID uuid) {
+        return playerIds.getOrDefault(uuid, -1);
+    }
+
+    /**
+     * プレイヤーIDからプレイヤー情報を取得する
+     *
+     * @param playerId プレイヤーID
+     * @return プレイヤー情報（登録されていない場合はnull）
+     */
+    public @Nullable IndexedPlayer getPlayer(int playerId) {
+        var array = players;
+        return playerId >= 0 && playerId < array.length ? array[playerId] : null;
+    }
+
+    /**
+     * インデックスに登録されたプレイヤー情報
+     *
+     * @param uuid プレイヤーのUUID
+     * @param name プレイヤー名
+     */
+    public record IndexedPlayer(UUID uuid, String name) {
+    }
+}
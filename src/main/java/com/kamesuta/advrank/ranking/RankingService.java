@@ -1,16 +1,18 @@
 package com.kamesuta.advrank.ranking;
 
 import com.kamesuta.advrank.data.RankingProgressData;
+import com.kamesuta.advrank.data.RankingSnapshot;
+import com.kamesuta.advrank.database.AdvancementRepository;
+import com.kamesuta.advrank.database.CompletionRankRepairer;
+import com.kamesuta.advrank.database.CounterRepository;
 import com.kamesuta.advrank.database.DatabaseManager;
 import com.kamesuta.advrank.util.AdvancementUtil;
 import org.bukkit.Bukkit;
-import org.bukkit.advancement.Advancement;
-import org.bukkit.entity.Player;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.UUID;
+import java.time.Instant;
+import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -23,171 +25,349 @@ import static com.kamesuta.advrank.util.AdvancementUtil.uuidToBytes;
  */
 public class RankingService {
     private static final Logger logger = Logger.getLogger(RankingService.class.getName());
+
+    /**
+     * 達成順位のSQL式（player_advancementの別名はpa）
+     * 記録時に保存した順位を読む。過去の日時で追加され、振り直し待ちの行だけ前にいる人数から求める
+     */
+    private static final String RANK_SQL = """
+            COALESCE(pa.completion_rank, (SELECT COUNT(*) + 1 FROM player_advancement pa2
+              WHERE pa2.advancement_id = pa.advancement_id AND pa2.timestamp < pa.timestamp))""";
     
     private final DatabaseManager databaseManager;
+    private final AdvancementRepository advancementRepository;
+    /**
+     * 達成者数と総プレイヤー数のカウンター（COUNT(*)の代わりに参照する）
+     */
+    private final CounterRepository counterRepository;
+    /**
+     * 保存した達成順位の振り直し（順位で読む位置を決める前に、ずれた順位を振り直す）
+     */
+    private final CompletionRankRepairer rankRepairer;
+    /**
+     * メモリ上のランキングインデックス（無効の場合はnull）
+     * 読み込みが完了するまではSQLで取得する
+     */
+    private final @Nullable RankingIndex rankingIndex;
+    /**
+     * SQLで取得したランキングのキャッシュ
+     * ランキングインデックスを使用できる場合はSQLを使わないため、キャッシュもしない
+     */
+    private final RankingCache rankingCache;
     
-    public RankingService(DatabaseManager databaseManager) {
+    public RankingService(DatabaseManager databaseManager, AdvancementRepository advancementRepository, CounterRepository counterRepository, CompletionRankRepairer rankRepairer, @Nullable RankingIndex rankingIndex, RankingCache rankingCache) {
         this.databaseManager = databaseManager;
+        this.advancementRepository = advancementRepository;
+        this.counterRepository = counterRepository;
+        this.rankRepairer = rankRepairer;
+        this.rankingIndex = rankingIndex;
+        this.rankingCache = rankingCache;
+    }
+
+    /**
+     * 読み込み済みのランキングインデックスを取得する
+     *
+     * @return ランキングインデックス（無効または読み込み中の場合はnull）
+     */
+    private @Nullable RankingIndex readyIndex() {
+        return rankingIndex != null && rankingIndex.isReady() ? rankingIndex : null;
     }
     
     /**
-     * 実績の進捗データを取得する
-     * 
-     * @param player 対象プレイヤー
-     * @param advancement 対象実績
-     * @param limitTop 上位プレイヤーの表示数
-     * @param limitBottom 下位プレイヤーの表示数
-     * @return ランキング進捗データ
+     * ランキングインデックスから実績のランキングデータを取得する
      */
-    public RankingProgressData getAdvancementProgressData(Player player, Advancement advancement, int limitTop, int limitBottom) {
-        var key = advancement.getKey().asString();
-        var total = -1;
-        var done = -1;
-        RankingProgressData.PlayerProgress progress;
+    private RankingSnapshot getRankingSnapshot(RankingIndex index, int advancementId, int limitTop, int limitBottom) {
+        var total = index.getPlayerCount();
+        var ranking = index.getRanking(advancementId);
+        if (ranking == null) {
+            // まだ誰も達成していない実績
+            return new RankingSnapshot(advancementId, total, 0, new ArrayList<>(), new ArrayList<>());
+        }
+
         var top = new ArrayList<RankingProgressData.PlayerProgress>();
+        if (limitTop > 0) {
+            ranking.top(limitTop).forEach(e -> top.add(toPlayerProgress(index, e)));
+        }
         var bottom = new ArrayList<RankingProgressData.PlayerProgress>();
+        if (limitBottom > 0) {
+            ranking.bottom(limitBottom).forEach(e -> bottom.add(toPlayerProgress(index, e)));
+        }
+        return new RankingSnapshot(advancementId, total, ranking.size(), top, bottom);
+    }
 
-        try {
-            total = getTotalPlayerCount();
-            done = getCompletedPlayerCount(key);
-            progress = getPlayerProgress(player, key);
-            
-            if (limitTop > 0) {
-                top = getTopPlayers(key, limitTop);
-            }
-            
-            if (limitBottom > 0) {
-                bottom = getBottomPlayers(key, limitBottom);
-            }
-        } catch (SQLException e) {
-            logger.log(Level.WARNING, "進捗データの取得に失敗しました", e);
+    /**
+     * プレイヤーの実績進捗情報を取得する
+     *
+     * @param uuid プレイヤーのUUID
+     * @param advancementKey 実績キー
+     * @return 進捗情報（未達成の場合はnull）
+     */
+    public @Nullable RankingProgressData.PlayerProgress getPlayerProgress(UUID uuid, String advancementKey) throws SQLException {
+        var advancementId = advancementRepository.getAdvancementIdByKey(advancementKey);
+        if (advancementId == -1) {
             return null;
         }
 
-        return new RankingProgressData(total, done, progress, top, bottom);
+        var index = readyIndex();
+        if (index != null) {
+            var ranking = index.getRanking(advancementId);
+            var playerId = index.getPlayerId(uuid);
+            var entry = ranking != null && playerId != -1 ? ranking.find(playerId) : null;
+            return entry != null ? toPlayerProgress(index, entry) : null;
+        }
+
+        return getPlayerProgress(uuid, advancementId);
     }
-    
+
     /**
-     * 総プレイヤー数を取得する
+     * プレイヤーが達成済みの実績キーを取得する
+     *
+     * @param uuid プレイヤーのUUID
+     * @return 達成済みの実績キー
      */
-    private int getTotalPlayerCount() throws SQLException {
-        try (var pstmt = databaseManager.getConnection().prepareStatement("SELECT COUNT(*) FROM player;")) {
+    public Set<String> getCompletedAdvancementKeys(UUID uuid) throws SQLException {
+        var keys = new HashSet<String>();
+        var index = readyIndex();
+        if (index != null) {
+            var playerId = index.getPlayerId(uuid);
+            if (playerId != -1) {
+                for (var advancementId : index.getCompletedAdvancementIds(playerId)) {
+                    keys.add(advancementRepository.getAdvancementKey(advancementId));
+                }
+            }
+            return keys;
+        }
+
+        var sql = """
+            SELECT pa.advancement_id
+             FROM player_advancement pa
+             JOIN player p ON pa.player_id = p.id
+             WHERE p.uuid = ?;
+            """;
+        try (var conn = databaseManager.getConnection(); var pstmt = conn.prepareStatement(sql)) {
+            pstmt.setBytes(1, uuidToBytes(uuid));
             var rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt(1);
+            while (rs.next()) {
+                keys.add(advancementRepository.getAdvancementKey(rs.getInt(1)));
             }
         }
-        return 0;
+        return keys;
     }
-    
+
     /**
-     * 指定された実績を達成したプレイヤー数を取得する
+     * 複数の実績の見るプレイヤーによらないランキングデータをまとめて取得する
+     * SQLの場合は、総プレイヤー数・達成者数・上位と下位のプレイヤーの3回のクエリで取得する
+     *
+     * @param advancementKeys 実績キー
+     * @param limitTop 上位プレイヤーの表示数
+     * @param limitBottom 下位プレイヤーの表示数
+     * @return 実績キー → ランキングデータ
      */
-    private int getCompletedPlayerCount(String advancementKey) throws SQLException {
-        var sql = """
-            SELECT COUNT(*) FROM player_advancement pa
-             JOIN advancement a ON pa.advancement_id = a.id
-             WHERE a.advancement_key = ?;
-            """;
-        try (var pstmt = databaseManager.getConnection().prepareStatement(sql)) {
-            pstmt.setString(1, advancementKey);
-            var rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt(1);
+    public Map<String, RankingSnapshot> getRankingSnapshots(Collection<String> advancementKeys, int limitTop, int limitBottom) throws SQLException {
+        var result = new HashMap<String, RankingSnapshot>();
+        var index = readyIndex();
+        if (index != null) {
+            for (var key : advancementKeys) {
+                result.put(key, getRankingSnapshot(index, advancementRepository.getAdvancementIdByKey(key), limitTop, limitBottom));
             }
+            return result;
         }
-        return 0;
+
+        var total = counterRepository.getPlayerCount();
+        var advancementIds = toAdvancementIds(advancementKeys);
+        // キャッシュにない実績だけをまとめて読み込む
+        var extremes = rankingCache.getAll(advancementIds.keySet(), new ExtremesQuery(limitTop, limitBottom), Extremes::weight,
+                ids -> getExtremes(ids, limitTop, limitBottom));
+
+        for (var key : advancementKeys) {
+            var advancementId = advancementRepository.getAdvancementIdByKey(key);
+            var extreme = extremes.getOrDefault(advancementId, Extremes.EMPTY);
+            result.put(key, new RankingSnapshot(advancementId, total,
+                    counterRepository.getCompletedCount(advancementId),
+                    extreme.top(), extreme.bottom()));
+        }
+        return result;
     }
-    
+
     /**
-     * プレイヤーの実績進捗情報を取得する
+     * 複数の実績の上位と下位のプレイヤーを1回のクエリで取得する
+     *
+     * @param advancementIds 実績ID
+     * @param limitTop 上位プレイヤーの表示数
+     * @param limitBottom 下位プレイヤーの表示数
+     * @return 実績ID → 上位と下位のプレイヤー（指定した全ての実績を含む）
      */
-    private RankingProgressData.PlayerProgress getPlayerProgress(Player player, String advancementKey) throws SQLException {
-        var sql = """
-            SELECT p.uuid, pa.timestamp, RANK() OVER(ORDER BY pa.timestamp DESC)
-             FROM player_advancement pa
-             JOIN player p ON pa.player_id = p.id
-             JOIN advancement a ON pa.advancement_id = a.id
-             WHERE p.uuid = ? AND a.advancement_key = ?
-             LIMIT 1;
-            """;
-        try (var pstmt = databaseManager.getConnection().prepareStatement(sql)) {
-            pstmt.setBytes(1, uuidToBytes(player.getUniqueId()));
-            pstmt.setString(2, advancementKey);
-            var rs = pstmt.executeQuery();
-            
-            if (rs.next()) {
-                var offlinePlayer = Bukkit.getOfflinePlayer(bytesToUuid(rs.getBytes(1)));
-                var timestamp = rs.getTimestamp(2);
-                var rank = rs.getInt(3);
-                return new RankingProgressData.PlayerProgress(offlinePlayer, timestamp.toInstant(), rank);
+    private Map<Integer, Extremes> getExtremes(Collection<Integer> advancementIds, int limitTop, int limitBottom) throws SQLException {
+        var top = new HashMap<Integer, List<RankingProgressData.PlayerProgress>>();
+        var bottom = new HashMap<Integer, List<RankingProgressData.PlayerProgress>>();
+
+        if (!advancementIds.isEmpty()) {
+            var placeholders = String.join(", ", Collections.nCopies(advancementIds.size(), "?"));
+            try (var conn = databaseManager.getConnection()) {
+                // 上位と下位のプレイヤー（実績ごとに前後から番号を振り、両端の指定数だけ取得する）
+                try (var pstmt = conn.prepareStatement("""
+                        SELECT advancement_id, uuid, timestamp, completion_rank, row_asc, row_desc FROM (
+                            SELECT pa.advancement_id, p.uuid, pa.timestamp,
+                             %s AS completion_rank,
+                             ROW_NUMBER() OVER (PARTITION BY pa.advancement_id ORDER BY pa.timestamp ASC, pa.player_id ASC) AS row_asc,
+                             ROW_NUMBER() OVER (PARTITION BY pa.advancement_id ORDER BY pa.timestamp DESC, pa.player_id DESC) AS row_desc
+                             FROM player_advancement pa
+                             JOIN player p ON pa.player_id = p.id
+                             WHERE pa.advancement_id IN (%s)
+                        ) AS ranked
+                         WHERE row_asc <= ? OR row_desc <= ?
+                         ORDER BY advancement_id, row_asc;
+                        """.formatted(RANK_SQL, placeholders))) {
+                    var parameterIndex = setInts(pstmt, 1, advancementIds);
+                    pstmt.setInt(parameterIndex++, limitTop);
+                    pstmt.setInt(parameterIndex, limitBottom);
+                    var rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        var advancementId = rs.getInt(1);
+                        var offlinePlayer = Bukkit.getOfflinePlayer(bytesToUuid(rs.getBytes(2)));
+                        var progress = new RankingProgressData.PlayerProgress(offlinePlayer, rs.getTimestamp(3).toInstant(), rs.getInt(4));
+                        // 達成者が少ない場合は上位と下位の両方に含まれる（個別に取得する場合と同じ）
+                        if (rs.getInt(5) <= limitTop) {
+                            top.computeIfAbsent(advancementId, k -> new ArrayList<>()).add(progress);
+                        }
+                        if (rs.getInt(6) <= limitBottom) {
+                            bottom.computeIfAbsent(advancementId, k -> new ArrayList<>()).add(progress);
+                        }
+                    }
+                }
             }
         }
-        return null;
+
+        var result = new HashMap<Integer, Extremes>();
+        for (var advancementId : advancementIds) {
+            result.put(advancementId, new Extremes(top.getOrDefault(advancementId, List.of()), bottom.getOrDefault(advancementId, List.of())));
+        }
+        return result;
     }
-    
+
     /**
-     * 上位プレイヤーのランキングを取得する
+     * 複数の実績のプレイヤーの進捗情報をまとめて取得する
+     * SQLの場合は1回のクエリで取得する
+     *
+     * @param uuid プレイヤーのUUID
+     * @param advancementKeys 実績キー
+     * @return 実績キー → 進捗情報（未達成の実績は含まない）
      */
-    private ArrayList<RankingProgressData.PlayerProgress> getTopPlayers(String advancementKey, int limit) throws SQLException {
-        var players = new ArrayList<RankingProgressData.PlayerProgress>();
+    public Map<String, RankingProgressData.PlayerProgress> getPlayerProgressBatch(UUID uuid, Collection<String> advancementKeys) throws SQLException {
+        var result = new HashMap<String, RankingProgressData.PlayerProgress>();
+        var index = readyIndex();
+        if (index != null) {
+            for (var key : advancementKeys) {
+                var progress = getPlayerProgress(uuid, key);
+                if (progress != null) {
+                    result.put(key, progress);
+                }
+            }
+            return result;
+        }
+
+        var advancementIds = toAdvancementIds(advancementKeys);
+        if (advancementIds.isEmpty()) {
+            return result;
+        }
+
         var sql = """
-            SELECT p.uuid, pa.timestamp, RANK() OVER(ORDER BY pa.timestamp ASC)
+            SELECT pa.advancement_id, pa.timestamp, %s
              FROM player_advancement pa
              JOIN player p ON pa.player_id = p.id
-             JOIN advancement a ON pa.advancement_id = a.id
-             WHERE a.advancement_key = ?
-             ORDER BY pa.timestamp ASC
-             LIMIT ?;
-            """;
-        try (var pstmt = databaseManager.getConnection().prepareStatement(sql)) {
-            pstmt.setString(1, advancementKey);
-            pstmt.setInt(2, limit);
+             WHERE p.uuid = ? AND pa.advancement_id IN (%s);
+            """.formatted(RANK_SQL, String.join(", ", Collections.nCopies(advancementIds.size(), "?")));
+        try (var conn = databaseManager.getConnection(); var pstmt = conn.prepareStatement(sql)) {
+            pstmt.setBytes(1, uuidToBytes(uuid));
+            setInts(pstmt, 2, advancementIds.keySet());
             var rs = pstmt.executeQuery();
-            
+
+            var offlinePlayer = Bukkit.getOfflinePlayer(uuid);
             while (rs.next()) {
-                var offlinePlayer = Bukkit.getOfflinePlayer(bytesToUuid(rs.getBytes(1)));
-                var timestamp = rs.getTimestamp(2);
-                var rank = rs.getInt(3);
-                players.add(new RankingProgressData.PlayerProgress(offlinePlayer, timestamp.toInstant(), rank));
+                var key = advancementIds.get(rs.getInt(1));
+                result.put(key, new RankingProgressData.PlayerProgress(offlinePlayer, rs.getTimestamp(2).toInstant(), rs.getInt(3)));
             }
         }
-        return players;
+        return result;
     }
-    
+
     /**
-     * 下位プレイヤーのランキングを取得する
+     * 実績キーを実績IDに変換する（まだ誰も達成していない実績は含まない）
+     *
+     * @return 実績ID → 実績キー
      */
-    private ArrayList<RankingProgressData.PlayerProgress> getBottomPlayers(String advancementKey, int limit) throws SQLException {
-        var players = new ArrayList<RankingProgressData.PlayerProgress>();
+    private Map<Integer, String> toAdvancementIds(Collection<String> advancementKeys) {
+        var advancementIds = new LinkedHashMap<Integer, String>();
+        for (var key : advancementKeys) {
+            var advancementId = advancementRepository.getAdvancementIdByKey(key);
+            if (advancementId != -1) {
+                advancementIds.put(advancementId, key);
+            }
+        }
+        return advancementIds;
+    }
+
+    /**
+     * 整数のパラメータを順に設定する
+     *
+     * @return 次のパラメータの位置
+     */
+    private static int setInts(PreparedStatement pstmt, int parameterIndex, Collection<Integer> values) throws SQLException {
+        for (var value : values) {
+            pstmt.setInt(parameterIndex++, value);
+        }
+        return parameterIndex;
+    }
+
+    /**
+     * インデックスの達成記録を進捗情報に変換する
+     */
+    private static RankingProgressData.PlayerProgress toPlayerProgress(RankingIndex index, AdvancementRanking.Entry entry) {
+        var player = index.getPlayer(entry.playerId());
+        var offlinePlayer = Bukkit.getOfflinePlayer(player != null ? player.uuid() : new UUID(0, 0));
+        return new RankingProgressData.PlayerProgress(offlinePlayer, Instant.ofEpochMilli(entry.timestamp()), entry.rank());
+    }
+
+    /**
+     * インデックスの達成記録をランキングエントリに変換する
+     */
+    private static RankingEntry toRankingEntry(RankingIndex index, AdvancementRanking.Entry entry, String advancementKey) {
+        var player = index.getPlayer(entry.playerId());
+        return new RankingEntry(player != null ? player.name() : "?", new Timestamp(entry.timestamp()), entry.rank(), advancementKey);
+    }
+
+    /**
+     * データベースからプレイヤーの実績進捗情報を取得する
+     */
+    private RankingProgressData.PlayerProgress getPlayerProgress(UUID uuid, int advancementId) throws SQLException {
         var sql = """
-            SELECT * FROM (
-                SELECT p.uuid, pa.timestamp, RANK() OVER(ORDER BY pa.timestamp ASC)
-                 FROM player_advancement pa
-                 JOIN player p ON pa.player_id = p.id
-                 JOIN advancement a ON pa.advancement_id = a.id
-                 WHERE a.advancement_key = ?
-                 ORDER BY pa.timestamp DESC
-                 LIMIT ?
-            ) AS A ORDER BY timestamp ASC;
-            """;
-        try (var pstmt = databaseManager.getConnection().prepareStatement(sql)) {
-            pstmt.setString(1, advancementKey);
-            pstmt.setInt(2, limit);
+            SELECT p.uuid, pa.timestamp, %s
+             FROM player_advancement pa
+             JOIN player p ON pa.player_id = p.id
+             WHERE p.uuid = ? AND pa.advancement_id = ?
+             LIMIT 1;
+            """.formatted(RANK_SQL);
+        try (var conn = databaseManager.getConnection(); var pstmt = conn.prepareStatement(sql)) {
+            pstmt.setBytes(1, uuidToBytes(uuid));
+            pstmt.setInt(2, advancementId);
             var rs = pstmt.executeQuery();
             
-            while (rs.next()) {
+            if (rs.next()) {
                 var offlinePlayer = Bukkit.getOfflinePlayer(bytesToUuid(rs.getBytes(1)));
                 var timestamp = rs.getTimestamp(2);
                 var rank = rs.getInt(3);
-                players.add(new RankingProgressData.PlayerProgress(offlinePlayer, timestamp.toInstant(), rank));
+                return new RankingProgressData.PlayerProgress(offlinePlayer, timestamp.toInstant(), rank);
             }
         }
-        return players;
+        return null;
     }
     
+    
     /**
      * 実績IDによるページネーション付きランキングを取得する
+     * どのページも、ランキングインデックスの二分探索か、保存した達成順位のインデックスで先頭の行を探して読むため、
+     * ページの深さによらず一定の処理量で取得できる
+     * 順位の振り直し待ちの実績は、先に呼び出したスレッドで振り直す（非同期スレッドから呼び出すこと）
      * 
      * @param advancementId 実績ID
      * @param page ページ番号（1から開始）
@@ -200,13 +380,28 @@ public class RankingService {
         var totalCount = 0;
         
         try {
-            advancementKey = getAdvancementKey(advancementId);
+            advancementKey = advancementRepository.getAdvancementKey(advancementId);
             if (advancementKey == null) {
                 return new RankingResult(ranking, null, 0, page, pageSize);
             }
+
+            var index = readyIndex();
+            if (index != null) {
+                var advancementRanking = index.getRanking(advancementId);
+                if (advancementRanking != null) {
+                    totalCount = advancementRanking.size();
+                    for (var entry : advancementRanking.range((page - 1) * pageSize, pageSize)) {
+                        ranking.add(toRankingEntry(index, entry, advancementKey));
+                    }
+                }
+                return new RankingResult(ranking, advancementKey, totalCount, page, pageSize);
+            }
             
-            totalCount = getTotalCountByAdvancementId(advancementId);
-            ranking = getRankingData(advancementId, page, pageSize, advancementKey);
+            totalCount = counterRepository.getCompletedCount(advancementId);
+            rankRepairer.repairIfDirty(advancementId);
+            var rows = rankingCache.get(advancementId, new PageQuery(page, pageSize), List::size,
+                    () -> getRankingRows(advancementId, page, pageSize));
+            ranking = toRankingEntries(rows, advancementKey);
             
         } catch (SQLException e) {
             logger.log(Level.WARNING, "ランキングデータの取得に失敗しました", e);
@@ -214,70 +409,68 @@ public class RankingService {
         
         return new RankingResult(ranking, advancementKey, totalCount, page, pageSize);
     }
-    
+
     /**
-     * 実績IDから実績キーを取得する
+     * ページのランキングの行を(達成順位, プレイヤーID)順に取得する
+     * 順位を振り直し済みであれば、(達成順位, プレイヤーID)の順は(日時, プレイヤーID)の順と同じになる
+     * 1. ページの先頭の位置以下で最大の順位を(実績ID, 達成順位)のインデックスから求める
+     * 2. その順位から読み、先頭の位置より前の同順位の行だけを読み飛ばす（同じ日時の達成者の数で抑えられる）
      */
-    private String getAdvancementKey(int advancementId) throws SQLException {
-        try (var pstmt = databaseManager.getConnection().prepareStatement(
-                "SELECT advancement_key FROM advancement WHERE id = ?;"
-        )) {
-            pstmt.setInt(1, advancementId);
-            var rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getString("advancement_key");
+    private List<RankingRow> getRankingRows(int advancementId, int page, int pageSize) throws SQLException {
+        var start = (page - 1) * pageSize;
+        var rows = new ArrayList<RankingRow>();
+        try (var conn = databaseManager.getConnection()) {
+            int firstRank;
+            try (var pstmt = conn.prepareStatement("""
+                    SELECT MAX(completion_rank)
+                     FROM player_advancement
+                     WHERE advancement_id = ? AND completion_rank <= ?;
+                    """)) {
+                pstmt.setInt(1, advancementId);
+                pstmt.setInt(2, start + 1);
+                var rs = pstmt.executeQuery();
+                firstRank = rs.next() ? rs.getInt(1) : 0;
             }
-        }
-        return null;
-    }
-    
-    /**
-     * 指定された実績IDの達成者総数を取得する
-     */
-    private int getTotalCountByAdvancementId(int advancementId) throws SQLException {
-        try (var pstmt = databaseManager.getConnection().prepareStatement(
-                "SELECT COUNT(*) FROM player_advancement pa WHERE pa.advancement_id = ?;"
-        )) {
-            pstmt.setInt(1, advancementId);
-            var rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt(1);
+            if (firstRank == 0) {
+                // 達成者がいない
+                return rows;
+            }
+
+            // 順位がfirstRankの行は、全体の(firstRank - 1)件目（0から数える）から並ぶ
+            var skip = start - (firstRank - 1);
+            try (var pstmt = conn.prepareStatement("""
+                    SELECT p.name, pa.timestamp, pa.completion_rank
+                     FROM player_advancement pa
+                     JOIN player p ON pa.player_id = p.id
+                     WHERE pa.advancement_id = ? AND pa.completion_rank >= ?
+                     ORDER BY pa.completion_rank, pa.player_id
+                     LIMIT ?;
+                    """)) {
+                pstmt.setInt(1, advancementId);
+                pstmt.setInt(2, firstRank);
+                pstmt.setInt(3, skip + pageSize);
+                var rs = pstmt.executeQuery();
+                for (var i = 0; rs.next(); i++) {
+                    if (i >= skip) {
+                        rows.add(new RankingRow(rs.getString("name"), rs.getTimestamp("timestamp").getTime(), rs.getInt("completion_rank")));
+                    }
+                }
             }
         }
-        return 0;
+        return rows;
     }
-    
+
     /**
-     * ページネーション付きランキングデータを取得する
+     * ページの行をランキングエントリーに変換する
      */
-    private ArrayList<RankingEntry> getRankingData(int advancementId, int page, int pageSize, String advancementKey) throws SQLException {
-        var ranking = new ArrayList<RankingEntry>();
-        var offset = (page - 1) * pageSize;
-        var sql = """
-            SELECT p.name, pa.timestamp,
-             RANK() OVER (ORDER BY pa.timestamp ASC) as rank
-             FROM player_advancement pa
-             JOIN player p ON pa.player_id = p.id
-             WHERE pa.advancement_id = ?
-             ORDER BY pa.timestamp ASC
-             LIMIT ? OFFSET ?;
-            """;
-        try (var pstmt = databaseManager.getConnection().prepareStatement(sql)) {
-            pstmt.setInt(1, advancementId);
-            pstmt.setInt(2, pageSize);
-            pstmt.setInt(3, offset);
-            var rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                var playerName = rs.getString("name");
-                var timestamp = rs.getTimestamp("timestamp");
-                var rank = rs.getInt("rank");
-                ranking.add(new RankingEntry(playerName, timestamp, rank, advancementKey));
-            }
+    private ArrayList<RankingEntry> toRankingEntries(List<RankingRow> rows, String advancementKey) {
+        var ranking = new ArrayList<RankingEntry>(rows.size());
+        for (var row : rows) {
+            ranking.add(new RankingEntry(row.playerName(), new Timestamp(row.timestamp()), row.rank(), advancementKey));
         }
         return ranking;
     }
-    
+
     /**
      * プレイヤーの特定実績のランキング情報を取得する
      * 
@@ -287,33 +480,21 @@ public class RankingService {
      */
     public RankingEntry getPlayerRankingByAdvancementId(int advancementId, UUID playerUuid) {
         try {
-            var advancementKey = getAdvancementKey(advancementId);
+            var advancementKey = advancementRepository.getAdvancementKey(advancementId);
             if (advancementKey == null) {
                 return null;
             }
-            
-            var sql = """
-                SELECT p.name, pa.timestamp,
-                 (SELECT COUNT(*) + 1 FROM player_advancement pa2
-                  JOIN player p2 ON pa2.player_id = p2.id
-                  WHERE pa2.advancement_id = ? AND pa2.timestamp < pa.timestamp) as rank
-                 FROM player_advancement pa
-                 JOIN player p ON pa.player_id = p.id
-                 WHERE pa.advancement_id = ? AND p.uuid = ?;
-                """;
-            try (var pstmt = databaseManager.getConnection().prepareStatement(sql)) {
-                pstmt.setInt(1, advancementId);
-                pstmt.setInt(2, advancementId);
-                pstmt.setBytes(3, AdvancementUtil.uuidToBytes(playerUuid));
-                var rs = pstmt.executeQuery();
-                
-                if (rs.next()) {
-                    var playerName = rs.getString("name");
-                    var timestamp = rs.getTimestamp("timestamp");
-                    var rank = rs.getInt("rank");
-                    return new RankingEntry(playerName, timestamp, rank, advancementKey);
-                }
+
+            var index = readyIndex();
+            if (index != null) {
+                var ranking = index.getRanking(advancementId);
+                var playerId = index.getPlayerId(playerUuid);
+                var entry = ranking != null && playerId != -1 ? ranking.find(playerId) : null;
+                return entry != null ? toRankingEntry(index, entry, advancementKey) : null;
             }
+            
+            return rankingCache.get(advancementId, new PlayerRankQuery(playerUuid), entry -> 1,
+                    () -> getPlayerRanking(advancementId, playerUuid, advancementKey));
         } catch (SQLException e) {
             logger.log(Level.WARNING, "プレイヤーランキングの取得に失敗しました", e);
         }
@@ -321,6 +502,31 @@ public class RankingService {
         return null;
     }
 
+    /**
+     * データベースからプレイヤーの特定実績のランキング情報を取得する
+     */
+    private @Nullable RankingEntry getPlayerRanking(int advancementId, UUID playerUuid, String advancementKey) throws SQLException {
+        var sql = """
+            SELECT p.name, pa.timestamp, %s AS completion_rank
+             FROM player_advancement pa
+             JOIN player p ON pa.player_id = p.id
+             WHERE pa.advancement_id = ? AND p.uuid = ?;
+            """.formatted(RANK_SQL);
+        try (var conn = databaseManager.getConnection(); var pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, advancementId);
+            pstmt.setBytes(2, AdvancementUtil.uuidToBytes(playerUuid));
+            var rs = pstmt.executeQuery();
+            
+            if (rs.next()) {
+                var playerName = rs.getString("name");
+                var timestamp = rs.getTimestamp("timestamp");
+                var rank = rs.getInt("completion_rank");
+                return new RankingEntry(playerName, timestamp, rank, advancementKey);
+            }
+        }
+        return null;
+    }
+
     /**
      * ランキング結果のデータクラス（ページネーション対応）
      * 
@@ -368,4 +574,46 @@ public class RankingService {
      */
     public record RankingEntry(String playerName, Timestamp timestamp, int rank, String advancementKey) {
     }
-}
\ No newline at end of file
+
+    /**
+     * データベースから読み込んだランキングの行
+     *
+     * @param playerName プレイヤー名
+     * @param timestamp 達成日時（エポックミリ秒）
+     * @param rank 達成順位
+     */
+    private record RankingRow(String playerName, long timestamp, int rank) {
+    }
+
+    /**
+     * 実績の上位と下位のプレイヤー（キャッシュする値）
+     *
+     * @param top 上位のプレイヤーの進捗
+     * @param bottom 下位のプレイヤーの進捗
+     */
+    private record Extremes(List<RankingProgressData.PlayerProgress> top, List<RankingProgressData.PlayerProgress> bottom) {
+        private static final Extremes EMPTY = new Extremes(List.of(), List.of());
+
+        private int weight() {
+            return top.size() + bottom.size();
+        }
+    }
+
+    /**
+     * キャッシュのクエリの形: 上位と下位のプレイヤー
+     */
+    private record ExtremesQuery(int limitTop, int limitBottom) {
+    }
+
+    /**
+     * キャッシュのクエリの形: ランキングのページ
+     */
+    private record PageQuery(int page, int pageSize) {
+    }
+
+    /**
+     * キャッシュのクエリの形: プレイヤーの順位
+     */
+    private record PlayerRankQuery(UUID playerUuid) {
+    }
+}
@@ -0,0 +1,38 @@
+-- 初期スキーマ
+-- マイグレーション導入前に作成されたデータベースでもそのまま適用できるよう、IF NOT EXISTSで作成する
+
+-- playerテーブル：プレイヤー情報を格納
+CREATE TABLE IF NOT EXISTS player (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    uuid BINARY(16) UNIQUE NOT NULL,
+    name VARCHAR(16) NOT NULL,
+    INDEX idx_uuid (uuid)
+);
+
+-- advancementテーブル：実績情報を格納
+CREATE TABLE IF NOT EXISTS advancement (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    advancement_key VARCHAR(255) UNIQUE NOT NULL
+);
+
+-- player_advancementテーブル：プレイヤーの実績達成記録を格納
+CREATE TABLE IF NOT EXISTS player_advancement (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    player_id INT NOT NULL,
+    advancement_id INT NOT NULL,
+    timestamp TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    UNIQUE KEY unique_player_advancement (player_id, advancement_id),
+    FOREIGN KEY (player_id) REFERENCES player(id),
+    FOREIGN KEY (advancement_id) REFERENCES advancement(id),
+    INDEX idx_advancement_id (advancement_id),
+    INDEX idx_timestamp (timestamp)
+);
+
+-- import_manifestテーブル：インポート済みの実績ファイルの情報を格納
+CREATE TABLE IF NOT EXISTS import_manifest (
+    file_name VARCHAR(255) PRIMARY KEY,
+    size BIGINT NOT NULL,
+    modified_at BIGINT NOT NULL,
+    hash BINARY(32) NOT NULL,
+    imported_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+);
@@ -0,0 +1,32 @@
+-- ランキング用のカバリングインデックス
+-- ランキングの取得・順位の計算・ページ送りは全て「advancement_idで絞り込み、(timestamp, player_id)順に並べる」ため、
+-- この3列の複合インデックスがあればテーブル本体を読まずにインデックスだけで処理できる
+-- MySQLのDDLは文ごとに確定するため、途中で失敗しても再実行できるよう、各文は適用前の状態の場合のみ実行する
+SET @sql = IF(
+    (SELECT COUNT(*) FROM information_schema.statistics
+      WHERE table_schema = DATABASE() AND table_name = 'player_advancement' AND index_name = 'idx_advancement_timestamp_player') = 0,
+    'ALTER TABLE player_advancement ADD INDEX idx_advancement_timestamp_player (advancement_id, timestamp, player_id)',
+    'DO 0');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 単独のインデックスは上の複合インデックスで代用できるため削除する
+-- （advancement_idの外部キーも複合インデックスの先頭列を使用する）
+SET @sql = IF(
+    (SELECT COUNT(*) FROM information_schema.statistics
+      WHERE table_schema = DATABASE() AND table_name = 'player_advancement' AND index_name = 'idx_advancement_id') > 0,
+    'ALTER TABLE player_advancement DROP INDEX idx_advancement_id',
+    'DO 0');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @sql = IF(
+    (SELECT COUNT(*) FROM information_schema.statistics
+      WHERE table_schema = DATABASE() AND table_name = 'player_advancement' AND index_name = 'idx_timestamp') > 0,
+    'ALTER TABLE player_advancement DROP INDEX idx_timestamp',
+    'DO 0');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
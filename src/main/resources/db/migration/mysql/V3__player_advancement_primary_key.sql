@@ -0,0 +1,14 @@
+-- player_advancementの主キーを(player_id, advancement_id)に変更する
+-- サロゲートキー(id)とUNIQUE(player_id, advancement_id)の二重管理をやめ、行を(player_id, advancement_id)順にクラスタ化する
+-- ・INSERT IGNOREの重複判定とプレイヤー単位の検索が主キーだけで完結する
+-- ・セカンダリインデックスには主キーの列が含まれるが、player_id, advancement_idは既にidx_advancement_timestamp_playerにあるため、id列の分だけ小さくなる
+-- テーブルの再構築が1回で済むよう、1つのALTER文で変更する
+-- 変更済みの場合（id列がない場合）は実行しない
+SET @sql = IF(
+    (SELECT COUNT(*) FROM information_schema.columns
+      WHERE table_schema = DATABASE() AND table_name = 'player_advancement' AND column_name = 'id') > 0,
+    'ALTER TABLE player_advancement DROP COLUMN id, ADD PRIMARY KEY (player_id, advancement_id), DROP INDEX unique_player_advancement',
+    'DO 0');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
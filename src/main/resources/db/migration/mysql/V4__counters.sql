@@ -0,0 +1,23 @@
+-- 達成者数と総プレイヤー数のカウンター
+-- COUNT(*)の代わりに参照する。player, player_advancementへの追加と同じトランザクションで加算する
+
+-- advancement_counterテーブル：実績ごとの達成者数
+CREATE TABLE IF NOT EXISTS advancement_counter (
+    advancement_id INT PRIMARY KEY,
+    completed_count INT NOT NULL DEFAULT 0,
+    FOREIGN KEY (advancement_id) REFERENCES advancement(id)
+);
+
+-- global_counterテーブル：総プレイヤー数などの全体のカウンター
+CREATE TABLE IF NOT EXISTS global_counter (
+    name VARCHAR(64) PRIMARY KEY,
+    value BIGINT NOT NULL DEFAULT 0
+);
+
+-- 既存のデータから初期値を作成する
+-- 途中で失敗して再実行した場合は、作成済みの行をそのまま使う
+INSERT IGNORE INTO advancement_counter (advancement_id, completed_count)
+    SELECT advancement_id, COUNT(*) FROM player_advancement GROUP BY advancement_id;
+
+INSERT IGNORE INTO global_counter (name, value)
+    SELECT 'player_count', COUNT(*) FROM player;
@@ -0,0 +1,29 @@
+-- 達成順位を記録時に保存する
+-- 順位の表示は保存した順位を読むだけで済む。過去の日時の達成が追加された実績はranks_dirtyを立て、非同期で振り直す
+-- MySQLのDDLは文ごとに確定するため、途中で失敗しても再実行できるよう、列は未追加の場合のみ追加する
+SET @sql = IF(
+    (SELECT COUNT(*) FROM information_schema.columns
+      WHERE table_schema = DATABASE() AND table_name = 'player_advancement' AND column_name = 'completion_rank') = 0,
+    'ALTER TABLE player_advancement ADD COLUMN completion_rank INT NULL',
+    'DO 0');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @sql = IF(
+    (SELECT COUNT(*) FROM information_schema.columns
+      WHERE table_schema = DATABASE() AND table_name = 'advancement_counter' AND column_name = 'ranks_dirty') = 0,
+    'ALTER TABLE advancement_counter ADD COLUMN ranks_dirty BOOLEAN NOT NULL DEFAULT FALSE',
+    'DO 0');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 既存の達成に順位を付ける（同じ日時は同順位）
+-- 全ての行を同じ値で上書きするため、再実行しても結果は変わらない
+UPDATE player_advancement pa
+    JOIN (
+        SELECT player_id, advancement_id, RANK() OVER (PARTITION BY advancement_id ORDER BY timestamp ASC) AS completion_rank
+        FROM player_advancement
+    ) AS ranked ON pa.player_id = ranked.player_id AND pa.advancement_id = ranked.advancement_id
+    SET pa.completion_rank = ranked.completion_rank;
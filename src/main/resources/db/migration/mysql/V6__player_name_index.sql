@@ -0,0 +1,11 @@
+-- プレイヤー名の検索用インデックス
+-- /adv でオフラインのプレイヤーを名前から検索するため
+-- 追加済みの場合（記録前に失敗した場合）は実行しない
+SET @sql = IF(
+    (SELECT COUNT(*) FROM information_schema.statistics
+      WHERE table_schema = DATABASE() AND table_name = 'player' AND index_name = 'idx_player_name') = 0,
+    'ALTER TABLE player ADD INDEX idx_player_name (name)',
+    'DO 0');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
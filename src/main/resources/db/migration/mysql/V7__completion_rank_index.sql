@@ -0,0 +1,11 @@
+-- 保存した達成順位でランキングのページを読むためのインデックス
+-- ページの先頭の順位をインデックスで探し、そこから1ページ分だけ読む（OFFSETで前の行を読み飛ばさない）
+-- 追加済みの場合（記録前に失敗した場合）は実行しない
+SET @sql = IF(
+    (SELECT COUNT(*) FROM information_schema.statistics
+      WHERE table_schema = DATABASE() AND table_name = 'player_advancement' AND index_name = 'idx_advancement_completion_rank') = 0,
+    'ALTER TABLE player_advancement ADD INDEX idx_advancement_completion_rank (advancement_id, completion_rank, player_id)',
+    'DO 0');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
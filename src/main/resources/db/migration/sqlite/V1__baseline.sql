@@ -0,0 +1,52 @@
+-- 初期スキーマ（SQLite）
+-- MySQLのV1〜V5を適用した後と同じ構成で作成する
+-- 日時はJDBCドライバーの既定に合わせ、エポックミリ秒の整数で保存する
+
+-- playerテーブル：プレイヤー情報を格納
+CREATE TABLE IF NOT EXISTS player (
+    id INTEGER PRIMARY KEY AUTOINCREMENT,
+    uuid BLOB UNIQUE NOT NULL,
+    name VARCHAR(16) NOT NULL
+);
+
+-- advancementテーブル：実績情報を格納
+CREATE TABLE IF NOT EXISTS advancement (
+    id INTEGER PRIMARY KEY AUTOINCREMENT,
+    advancement_key VARCHAR(255) UNIQUE NOT NULL
+);
+
+-- player_advancementテーブル：プレイヤーの実績達成記録を格納
+-- (player_id, advancement_id)でクラスタ化し、ランキング用に(advancement_id, timestamp, player_id)のインデックスを作成する
+CREATE TABLE IF NOT EXISTS player_advancement (
+    player_id INTEGER NOT NULL REFERENCES player(id),
+    advancement_id INTEGER NOT NULL REFERENCES advancement(id),
+    timestamp INTEGER NOT NULL,
+    completion_rank INTEGER,
+    PRIMARY KEY (player_id, advancement_id)
+) WITHOUT ROWID;
+
+CREATE INDEX IF NOT EXISTS idx_advancement_timestamp_player ON player_advancement (advancement_id, timestamp, player_id);
+
+-- import_manifestテーブル：インポート済みの実績ファイルの情報を格納
+CREATE TABLE IF NOT EXISTS import_manifest (
+    file_name VARCHAR(255) PRIMARY KEY,
+    size BIGINT NOT NULL,
+    modified_at BIGINT NOT NULL,
+    hash BLOB NOT NULL,
+    imported_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- advancement_counterテーブル：実績ごとの達成者数と順位の振り直し待ち
+CREATE TABLE IF NOT EXISTS advancement_counter (
+    advancement_id INTEGER PRIMARY KEY REFERENCES advancement(id),
+    completed_count INTEGER NOT NULL DEFAULT 0,
+    ranks_dirty BOOLEAN NOT NULL DEFAULT FALSE
+);
+
+-- global_counterテーブル：総プレイヤー数などの全体のカウンター
+CREATE TABLE IF NOT EXISTS global_counter (
+    name VARCHAR(64) PRIMARY KEY,
+    value BIGINT NOT NULL DEFAULT 0
+);
+
+INSERT OR IGNORE INTO global_counter (name, value) VALUES ('player_count', 0);
@@ -0,0 +1,4 @@
+-- プレイヤー名の検索用インデックス
+-- /adv でオフラインのプレイヤーを名前から検索するため
+-- （バージョン番号はMySQLのマイグレーションに合わせる）
+CREATE INDEX IF NOT EXISTS idx_player_name ON player (name);
@@ -0,0 +1,3 @@
+-- 保存した達成順位でランキングのページを読むためのインデックス
+-- ページの先頭の順位をインデックスで探し、そこから1ページ分だけ読む（OFFSETで前の行を読み飛ばさない）
+CREATE INDEX IF NOT EXISTS idx_advancement_completion_rank ON player_advancement (advancement_id, completion_rank, player_id);
@@ -0,0 +1,107 @@
+package com.kamesuta.advrank.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AssignRanksTest {
+    @Test
+    void laterCompletionsContinueFromDoneCount() {
+        var dirty = new HashSet<Integer>();
+        var ranked = AdvancementRepository.assignRanks(
+                List.of(row(2, 1, 300), row(1, 1, 200)),
+                Map.of(1, 5),
+                Map.of(1, new AdvancementRepository.LatestCompletion(100, 5)),
+                dirty);
+
+        assertEquals(List.of(6, 7), ranks(ranked));
+        assertEquals(List.of(1, 2), playerIds(ranked));
+        assertTrue(dirty.isEmpty());
+    }
+
+    @Test
+    void firstCompletionOfAdvancementIsRankOne() {
+        var dirty = new HashSet<Integer>();
+        var ranked = AdvancementRepository.assignRanks(List.of(row(1, 1, 100)), Map.of(), Map.of(), dirty);
+
+        assertEquals(List.of(1), ranks(ranked));
+        assertTrue(dirty.isEmpty());
+    }
+
+    @Test
+    void sameTimestampSharesRank() {
+        var dirty = new HashSet<Integer>();
+        // 記録済みの最後の達成と同じ日時、新しく記録するもの同士で同じ日時
+        var ranked = AdvancementRepository.assignRanks(
+                List.of(row(3, 1, 100), row(4, 1, 200), row(5, 1, 200), row(6, 1, 300)),
+                Map.of(1, 2),
+                Map.of(1, new AdvancementRepository.LatestCompletion(100, 2)),
+                dirty);
+
+        assertEquals(List.of(2, 4, 4, 6), ranks(ranked));
+        assertTrue(dirty.isEmpty());
+    }
+
+    @Test
+    void sameTimestampAsUnrankedLatestMarksDirty() {
+        var dirty = new HashSet<Integer>();
+        var ranked = AdvancementRepository.assignRanks(
+                List.of(row(3, 1, 100)),
+                Map.of(1, 2),
+                Map.of(1, new AdvancementRepository.LatestCompletion(100, null)),
+                dirty);
+
+        assertEquals(1, ranked.size());
+        assertNull(ranked.get(0).rank());
+        assertEquals(Set.of(1), dirty);
+    }
+
+    @Test
+    void backdatedCompletionMarksDirty() {
+        var dirty = new HashSet<Integer>();
+        // 1件目は最後の達成より前なので空、2件目はそれより後なので、振り直し前でも数えた順位になる
+        var ranked = AdvancementRepository.assignRanks(
+                List.of(row(3, 1, 50), row(4, 1, 300)),
+                Map.of(1, 2),
+                Map.of(1, new AdvancementRepository.LatestCompletion(100, 2)),
+                dirty);
+
+        assertNull(ranked.get(0).rank());
+        assertEquals(4, ranked.get(1).rank());
+        assertEquals(Set.of(1), dirty);
+    }
+
+    @Test
+    void advancementsAreRankedIndependently() {
+        var dirty = new HashSet<Integer>();
+        var ranked = AdvancementRepository.assignRanks(
+                List.of(row(1, 2, 100), row(1, 1, 500), row(2, 2, 50), row(2, 1, 600)),
+                Map.of(1, 10, 2, 0),
+                Map.of(1, new AdvancementRepository.LatestCompletion(400, 10)),
+                dirty);
+
+        // 実績・日時順に並ぶ
+        assertEquals(List.of(1, 1, 2, 2), ranked.stream().map(r -> r.row().advancementId()).toList());
+        assertEquals(List.of(1, 2, 2, 1), playerIds(ranked));
+        assertEquals(List.of(11, 12, 1, 2), ranks(ranked));
+        assertTrue(dirty.isEmpty());
+    }
+
+    private static AdvancementRepository.PlayerAdvancementRow row(int playerId, int advancementId, long timestamp) {
+        return new AdvancementRepository.PlayerAdvancementRow(playerId, advancementId, new Timestamp(timestamp));
+    }
+
+    private static List<Integer> ranks(List<AdvancementRepository.RankedRow> ranked) {
+        return ranked.stream().map(AdvancementRepository.RankedRow::rank).toList();
+    }
+
+    private static List<Integer> playerIds(List<AdvancementRepository.RankedRow> ranked) {
+        return ranked.stream().map(r -> r.row().playerId()).toList();
+    }
+}
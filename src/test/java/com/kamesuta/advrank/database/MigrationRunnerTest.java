@@ -0,0 +1,78 @@
+package com.kamesuta.advrank.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MigrationRunnerTest {
+    @Test
+    void splitsStatementsAtLineEndingSemicolon() {
+        var statements = MigrationRunner.splitStatements("""
+                CREATE TABLE a (
+                    id INT
+                );
+                CREATE INDEX idx_a ON a (id);
+                """);
+
+        assertEquals(List.of("CREATE TABLE a (\n    id INT\n);", "CREATE INDEX idx_a ON a (id);"), statements);
+    }
+
+    @Test
+    void skipsCommentLines() {
+        var statements = MigrationRunner.splitStatements("""
+                -- 説明;
+                CREATE TABLE a (
+                    -- 列の説明;
+                    id INT
+                );
+                """);
+
+        assertEquals(List.of("CREATE TABLE a (\n    id INT\n);"), statements);
+    }
+
+    @Test
+    void keepsTrailingStatementWithoutSemicolon() {
+        var statements = MigrationRunner.splitStatements("DROP TABLE a;\r\nDROP TABLE b\r\n");
+
+        assertEquals(List.of("DROP TABLE a;", "DROP TABLE b"), statements);
+    }
+
+    @Test
+    void ignoresBlankScript() {
+        assertEquals(List.of(), MigrationRunner.splitStatements(""));
+        assertEquals(List.of(), MigrationRunner.splitStatements("-- コメントのみ\n\n"));
+    }
+
+    @Test
+    void splitsBundledMigration() throws IOException {
+        String script;
+        try (var resource = getClass().getClassLoader().getResourceAsStream("db/migration/mysql/V5__completion_rank.sql")) {
+            assertNotNull(resource);
+            script = new String(resource.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        var statements = MigrationRunner.splitStatements(script);
+        assertFalse(statements.isEmpty());
+        for (var sql : statements) {
+            assertFalse(sql.isBlank());
+            assertFalse(sql.contains("--"), sql);
+        }
+        // 列の追加は、適用済みか確認する文と実行する文に分かれる
+        assertTrue(statements.get(0).startsWith("SET @sql = IF("));
+        assertTrue(statements.get(0).contains("ADD COLUMN completion_rank"));
+        assertEquals(List.of("PREPARE stmt FROM @sql;", "EXECUTE stmt;", "DEALLOCATE PREPARE stmt;"), statements.subList(1, 4));
+    }
+
+    @Test
+    void parsesMigrationFileName() {
+        var migration = MigrationRunner.Migration.parse("V3__player_advancement_primary_key.sql");
+
+        assertEquals(3, migration.version());
+        assertEquals("player advancement primary key", migration.description());
+        assertEquals("V3__player_advancement_primary_key.sql", migration.fileName());
+    }
+}
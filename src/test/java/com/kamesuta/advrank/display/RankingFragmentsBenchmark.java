@@ -0,0 +1,131 @@
+package com.kamesuta.advrank.display;
+
+import com.kamesuta.advrank.data.RankingProgressData;
+import com.kamesuta.advrank.data.RankingSnapshot;
+import net.minecraft.ChatFormatting;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.MutableComponent;
+import org.bukkit.OfflinePlayer;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 実績の説明文のランキング部分を組み立てる際の割り当て量（バイト/進捗）を測るベンチマーク
+ * テストとしては実行されないため、次のように手動で実行する
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.kamesuta.advrank.display.RankingFragmentsBenchmark \
+ *     -Dexec.args="1000000"
+ * </pre>
+ * 引数は1回の測定で組み立てる進捗の数
+ * 固定のランキングデータ（達成者100人、上位3人・下位3人）に対し、
+ * 変更前のように見るプレイヤーごとに全ての行を組み立てる場合と、共有の表示部品を使う場合を比べる
+ * 見るプレイヤーがランキングに含まれない場合と、上位に含まれる場合をそれぞれ測る
+ */
+public class RankingFragmentsBenchmark {
+    /**
+     * 測定に使うスレッドの割り当て量
+     */
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        RankingSnapshot snapshot = createSnapshot();
+        RankingFragments fragments = new RankingFragments(snapshot);
+        RankingProgressData.PlayerProgress outsider = new RankingProgressData.PlayerProgress(player("Outsider"), Instant.ofEpochMilli(1_700_000_500_000L), 50);
+        RankingProgressData.PlayerProgress topPlayer = snapshot.top().get(1);
+
+        for (int i = 0; i < 3; i++) {
+            // 最後の1回のみ表示し、それまではJITのウォームアップとする
+            boolean print = i == 2;
+            measure(print, "変更前・ランキング外", count, () -> appendPerViewer(Component.empty(), snapshot, outsider));
+            measure(print, "変更後・ランキング外", count, () -> fragments.appendTo(Component.empty(), outsider));
+            measure(print, "変更前・上位", count, () -> appendPerViewer(Component.empty(), snapshot, topPlayer));
+            measure(print, "変更後・上位", count, () -> fragments.appendTo(Component.empty(), topPlayer));
+        }
+    }
+
+    /**
+     * 指定回数組み立て、1回あたりの割り当て量と時間を表示する
+     */
+    private static void measure(boolean print, String label, int count, Runnable task) {
+        long threadId = Thread.currentThread().getId();
+        long startBytes = THREAD_BEAN.getThreadAllocatedBytes(threadId);
+        long startTime = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            task.run();
+        }
+        long elapsed = System.nanoTime() - startTime;
+        long allocated = THREAD_BEAN.getThreadAllocatedBytes(threadId) - startBytes;
+        if (print) {
+            System.out.printf("%s: %.0f bytes/op, %.0f ns/op%n", label, (double) allocated / count, (double) elapsed / count);
+        }
+    }
+
+    /**
+     * 変更前のAdvancementRankingDisplayと同じく、見るプレイヤーごとにランキング部分を全て組み立てる
+     */
+    private static void appendPerViewer(MutableComponent description, RankingSnapshot snapshot, @Nullable RankingProgressData.PlayerProgress own) {
+        if (!snapshot.top().isEmpty()) {
+            description.append("\n\n")
+                    .append(Component.literal("トップ3").withStyle(ChatFormatting.YELLOW));
+            appendLines(description, snapshot.top(), own);
+
+            if (snapshot.advancementId() != -1) {
+                description.append("\n")
+                        .append(Component.literal("/adv_rank " + snapshot.advancementId()).withStyle(ChatFormatting.BLUE))
+                        .append(Component.literal(" で全てのランキングを見る").withStyle(ChatFormatting.GRAY));
+            }
+        }
+        if (!snapshot.bottom().isEmpty() && snapshot.done() >= 6) {
+            description.append("\n\n")
+                    .append(Component.literal("直近達成3位").withStyle(ChatFormatting.BLUE));
+            appendLines(description, snapshot.bottom(), own);
+        }
+    }
+
+    private static void appendLines(MutableComponent description, List<RankingProgressData.PlayerProgress> ranking, @Nullable RankingProgressData.PlayerProgress own) {
+        for (RankingProgressData.PlayerProgress progress : ranking) {
+            boolean isOwn = own != null && progress.player().equals(own.player());
+            description.append("\n").append(RankingProgressData.rankingLine(progress, isOwn));
+        }
+    }
+
+    /**
+     * 固定のランキングデータを作成する
+     */
+    private static RankingSnapshot createSnapshot() {
+        List<RankingProgressData.PlayerProgress> top = new ArrayList<>();
+        List<RankingProgressData.PlayerProgress> bottom = new ArrayList<>();
+        for (int rank = 1; rank <= 3; rank++) {
+            top.add(new RankingProgressData.PlayerProgress(player("Top" + rank), Instant.ofEpochMilli(1_700_000_000_000L + rank * 60_000L), rank));
+        }
+        for (int rank = 98; rank <= 100; rank++) {
+            bottom.add(new RankingProgressData.PlayerProgress(player("Recent" + rank), Instant.ofEpochMilli(1_700_000_000_000L + rank * 60_000L), rank));
+        }
+        return new RankingSnapshot(42, 200, 100, top, bottom);
+    }
+
+    /**
+     * 名前とUUIDだけを持つプレイヤーを作成する
+     * サーバーを起動せずに使えるよう、OfflinePlayerをプロキシで実装する
+     */
+    private static OfflinePlayer player(String name) {
+        UUID uuid = UUID.nameUUIDFromBytes(name.getBytes());
+        return (OfflinePlayer) Proxy.newProxyInstance(OfflinePlayer.class.getClassLoader(), new Class<?>[]{OfflinePlayer.class}, (proxy, method, args) -> switch (method.getName()) {
+            case "getName" -> name;
+            case "getUniqueId" -> uuid;
+            case "equals" -> proxy == args[0];
+            case "hashCode" -> uuid.hashCode();
+            case "toString" -> name;
+            default -> throw new UnsupportedOperationException(method.getName());
+        });
+    }
+}
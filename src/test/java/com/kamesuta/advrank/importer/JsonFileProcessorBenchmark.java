@@ -0,0 +1,124 @@
+package com.kamesuta.advrank.importer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * 実績JSONファイルの解析速度（ファイル/秒）を測るベンチマーク
+ * テストとしては実行されないため、次のように手動で実行する
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.kamesuta.advrank.importer.JsonFileProcessorBenchmark \
+ *     -Dexec.args="2000 5"
+ * </pre>
+ * 引数は作成するファイル数と測定回数
+ * 一時ディレクトリにバニラのプレイヤーデータに近い構成（実績約120件、うち未達成20件、レシピ実績約900件）のファイルを作成し、
+ * 1スレッドで全ファイルを解析する時間を測る
+ * 名前の解決はファイルの解析と関係ないため、全員分を対応表に入れておく
+ */
+public class JsonFileProcessorBenchmark {
+    /**
+     * 達成日時の形式
+     */
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss Z").withZone(ZoneOffset.ofHours(9));
+
+    public static void main(String[] args) throws IOException {
+        var fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        var iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        var dir = Files.createTempDirectory("advrank-benchmark");
+        try {
+            var files = createSampleFiles(dir, fileCount);
+            var names = new HashMap<UUID, String>();
+            for (var file : files) {
+                var uuid = UUID.fromString(file.getName().substring(0, 36));
+                names.put(uuid, "Player");
+            }
+            var processor = new JsonFileProcessor(PlayerNameResolver.of(names));
+
+            // JITのウォームアップ
+            run(processor, files);
+            run(processor, files);
+
+            for (var i = 1; i <= iterations; i++) {
+                var startTime = System.nanoTime();
+                var advancements = run(processor, files);
+                var elapsed = System.nanoTime() - startTime;
+                System.out.printf("#%d: %d files, %d advancements, %.1f ms, %.0f files/sec%n",
+                        i, files.size(), advancements, elapsed / 1e6, files.size() * 1e9 / elapsed);
+            }
+        } finally {
+            try (var paths = Files.walk(dir)) {
+                paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * 全ファイルを解析し、読み取った実績の数を返す
+     */
+    private static long run(JsonFileProcessor processor, List<File> files) {
+        var advancements = 0L;
+        for (var file : files) {
+            var result = processor.processJsonFile(file);
+            if (!result.isSuccess()) {
+                throw new IllegalStateException("解析に失敗しました: " + file.getName() + " " + result.message());
+            }
+            advancements += result.advancements().size();
+        }
+        return advancements;
+    }
+
+    /**
+     * サンプルのプレイヤーデータを作成する
+     * 内容は固定のシードから作成するため、毎回同じになる
+     */
+    private static List<File> createSampleFiles(Path dir, int fileCount) throws IOException {
+        var random = new Random(42);
+        var files = new ArrayList<File>(fileCount);
+        for (var i = 0; i < fileCount; i++) {
+            var uuid = new UUID(random.nextLong(), random.nextLong());
+            var file = dir.resolve(uuid + ".json");
+            Files.writeString(file, createSampleJson(random), StandardCharsets.UTF_8);
+            files.add(file.toFile());
+        }
+        return files;
+    }
+
+    /**
+     * 1人分の実績JSONを作成する
+     */
+    private static String createSampleJson(Random random) {
+        var base = 1_700_000_000_000L + random.nextInt(1_000_000_000);
+        var json = new StringBuilder("{\n");
+        for (var i = 0; i < 900; i++) {
+            appendAdvancement(json, "minecraft:recipes/misc/recipe_" + i, 1, true, base + random.nextInt(100_000_000));
+        }
+        for (var i = 0; i < 120; i++) {
+            appendAdvancement(json, "minecraft:story/advancement_" + i, 1 + random.nextInt(3), i >= 20, base + random.nextInt(100_000_000));
+        }
+        json.append("  \"DataVersion\": 4438\n}");
+        return json.toString();
+    }
+
+    private static void appendAdvancement(StringBuilder json, String key, int criteriaCount, boolean done, long time) {
+        json.append("  \"").append(key).append("\": {\n    \"criteria\": {\n");
+        for (var i = 0; i < criteriaCount; i++) {
+            json.append("      \"criterion_").append(i).append("\": \"")
+                    .append(DATE_FORMATTER.format(Instant.ofEpochMilli(time + i * 1000L))).append('"')
+                    .append(i + 1 < criteriaCount ? ",\n" : "\n");
+        }
+        json.append("    },\n    \"done\": ").append(done).append("\n  },\n");
+    }
+}
@@ -0,0 +1,160 @@
+package com.kamesuta.advrank.ranking;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdvancementRankingTest {
+    @Test
+    void addInsertsBackdatedRecordInOrder() {
+        var ranking = new AdvancementRanking();
+        ranking.add(1, 300);
+        ranking.add(2, 100);
+        ranking.add(3, 200);
+        ranking.add(4, 50);
+
+        assertEquals(List.of(
+                new AdvancementRanking.Entry(4, 50, 1),
+                new AdvancementRanking.Entry(2, 100, 2),
+                new AdvancementRanking.Entry(3, 200, 3),
+                new AdvancementRanking.Entry(1, 300, 4)
+        ), ranking.top(10));
+        assertEquals(4, ranking.rankOf(1));
+        assertEquals(1, ranking.rankOf(4));
+    }
+
+    @Test
+    void sameTimestampOrderedByPlayerId() {
+        var ranking = new AdvancementRanking();
+        ranking.add(7, 100);
+        ranking.add(3, 100);
+        ranking.add(5, 100);
+
+        assertEquals(List.of(3, 5, 7), ranking.top(3).stream().map(AdvancementRanking.Entry::playerId).toList());
+    }
+
+    @Test
+    void addIgnoresRecordedPlayer() {
+        var ranking = new AdvancementRanking();
+        assertTrue(ranking.add(1, 100));
+        assertFalse(ranking.add(1, 50));
+        assertEquals(1, ranking.size());
+        assertEquals(100, ranking.find(1).timestamp());
+    }
+
+    @Test
+    void sameTimestampSharesRank() {
+        var ranking = new AdvancementRanking();
+        ranking.add(1, 100);
+        ranking.add(2, 200);
+        ranking.add(3, 200);
+        ranking.add(4, 200);
+        ranking.add(5, 300);
+
+        assertEquals(List.of(1, 2, 2, 2, 5), ranking.top(5).stream().map(AdvancementRanking.Entry::rank).toList());
+        assertEquals(2, ranking.rankOf(4));
+        assertEquals(5, ranking.rankOf(5));
+    }
+
+    @Test
+    void rangeStartingInsideTieKeepsRank() {
+        var ranking = new AdvancementRanking();
+        ranking.add(1, 100);
+        ranking.add(2, 200);
+        ranking.add(3, 200);
+        ranking.add(4, 200);
+        ranking.add(5, 300);
+
+        // 先頭が同順位の途中でも、二分探索で最初の順位を求める
+        assertEquals(List.of(2, 2, 5), ranking.range(2, 3).stream().map(AdvancementRanking.Entry::rank).toList());
+        assertEquals(List.of(2, 5), ranking.bottom(2).stream().map(AdvancementRanking.Entry::rank).toList());
+    }
+
+    @Test
+    void rangeClampsOutOfBounds() {
+        var ranking = new AdvancementRanking();
+        ranking.add(1, 100);
+        ranking.add(2, 200);
+
+        // 達成者数より多く指定した場合は全員
+        assertEquals(2, ranking.bottom(5).size());
+        assertEquals(0, ranking.range(5, 3).size());
+        // 負の開始位置は先頭から取得数分
+        assertEquals(2, ranking.range(-1, 2).size());
+        assertEquals(0, ranking.range(0, -1).size());
+    }
+
+    @Test
+    void missingPlayerHasNoRank() {
+        var ranking = new AdvancementRanking();
+        ranking.add(1, 100);
+
+        assertEquals(-1, ranking.rankOf(2));
+        assertNull(ranking.find(2));
+        assertFalse(ranking.contains(2));
+    }
+
+    @Test
+    void growKeepsOrder() {
+        var ranking = new AdvancementRanking();
+        // 新しい順に追加し、毎回先頭に挿入させる
+        for (var id = 1; id <= 100; id++) {
+            ranking.add(id, 1000 - id);
+        }
+        var entries = ranking.top(100);
+        for (var i = 0; i < entries.size(); i++) {
+            assertEquals(100 - i, entries.get(i).playerId());
+            assertEquals(i + 1, entries.get(i).rank());
+        }
+    }
+
+    @Test
+    void addAllMergesBackdatedBatch() {
+        var ranking = new AdvancementRanking();
+        ranking.add(1, 100);
+        ranking.add(2, 300);
+        ranking.add(3, 500);
+
+        // 既存の記録の前・間・後ろに入る記録を順不同で追加する
+        assertEquals(4, ranking.addAll(new int[]{9, 4, 8, 5}, new long[]{600, 50, 300, 200}));
+
+        assertEquals(List.of(4, 1, 5, 2, 8, 3, 9), ranking.top(10).stream().map(AdvancementRanking.Entry::playerId).toList());
+        assertEquals(List.of(1, 2, 3, 4, 4, 6, 7), ranking.top(10).stream().map(AdvancementRanking.Entry::rank).toList());
+        assertEquals(4, ranking.rankOf(8));
+        assertEquals(7, ranking.size());
+    }
+
+    @Test
+    void addAllSkipsRecordedAndDuplicatePlayers() {
+        var ranking = new AdvancementRanking();
+        ranking.add(1, 100);
+
+        assertEquals(1, ranking.addAll(new int[]{1, 2, 2}, new long[]{50, 200, 10}));
+        assertEquals(100, ranking.find(1).timestamp());
+        assertEquals(200, ranking.find(2).timestamp());
+        assertEquals(2, ranking.size());
+        assertEquals(0, ranking.addAll(new int[0], new long[0]));
+    }
+
+    @Test
+    void addAllGrowsAndAppends() {
+        var ranking = new AdvancementRanking();
+        var ids = new int[100];
+        var timestamps = new long[100];
+        for (var i = 0; i < 100; i++) {
+            ids[i] = 100 - i;
+            timestamps[i] = 1000 - i;
+        }
+        assertEquals(100, ranking.addAll(ids, timestamps));
+        assertEquals(1, ranking.addAll(new int[]{500}, new long[]{2000}));
+
+        var entries = ranking.top(101);
+        for (var i = 0; i < 100; i++) {
+            assertEquals(i + 1, entries.get(i).playerId());
+            assertEquals(i + 1, entries.get(i).rank());
+        }
+        assertEquals(500, entries.get(100).playerId());
+    }
+}
@@ -0,0 +1,42 @@
+package com.kamesuta.advrank.ranking;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlayerTimestampMapTest {
+    @Test
+    void getReturnsNoValueForMissingKey() {
+        var map = new PlayerTimestampMap();
+        assertEquals(PlayerTimestampMap.NO_VALUE, map.get(1));
+        // 空きスロットを表すキーでも、空きスロットの値を返さない
+        assertEquals(PlayerTimestampMap.NO_VALUE, map.get(0));
+        assertFalse(map.containsKey(0));
+    }
+
+    @Test
+    void putOverwritesValue() {
+        var map = new PlayerTimestampMap();
+        map.put(5, 100);
+        map.put(5, 200);
+        assertEquals(200, map.get(5));
+    }
+
+    @Test
+    void resizeKeepsAllValues() {
+        var map = new PlayerTimestampMap();
+        for (var id = 1; id <= 1000; id++) {
+            map.put(id, id * 10L);
+        }
+        for (var id = 1; id <= 1000; id++) {
+            assertEquals(id * 10L, map.get(id));
+        }
+        assertFalse(map.containsKey(1001));
+    }
+
+    @Test
+    void putRejectsZeroKey() {
+        var map = new PlayerTimestampMap();
+        assertThrows(IllegalArgumentException.class, () -> map.put(0, 1));
+    }
+}